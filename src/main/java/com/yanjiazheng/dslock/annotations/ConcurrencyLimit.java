@@ -0,0 +1,23 @@
+package com.yanjiazheng.dslock.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 限制整个集群同时执行该方法的调用数（分布式信号量）
+ *
+ * @author hp
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface ConcurrencyLimit {
+    String name() default "";        // 信号量名称，默认使用方法签名
+
+    int permits() default 10;        // 最大并发调用数
+
+    long waitTime() default 0;       // 等待许可的时间，单位：毫秒，0 表示不等待
+
+    long leaseTime() default 30000;  // 许可的租期，单位：毫秒，调用期间自动续期，节点宕机后未归还的许可在租期后回收
+}
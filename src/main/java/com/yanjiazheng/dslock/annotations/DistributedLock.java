@@ -0,0 +1,23 @@
+package com.yanjiazheng.dslock.annotations;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 在分布式锁内执行该方法，后端按锁名称路由（见 LockProviderFactory），可以在配置中切换而不修改代码
+ *
+ * @author hp
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface DistributedLock {
+    String name() default "";      // 锁名称，默认使用方法签名；包含 # 时按 SpEL 解析，例如 "'lock:' + #productCode"
+
+    String backend() default "";   // jvm / mysql / redis / redisson / zookeeper / curator，配置中的路由优先，为空时使用默认后端
+
+    long waitTime() default -1;    // 等待锁的时间，单位：毫秒，-1 表示一直等待
+
+    long leaseTime() default -1;   // 固定租期，单位：毫秒，到期自动释放不续期，只有 redis / redisson / mysql 支持；-1 表示持有期间自动续期
+}
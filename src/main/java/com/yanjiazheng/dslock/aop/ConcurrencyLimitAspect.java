@@ -0,0 +1,38 @@
+package com.yanjiazheng.dslock.aop;
+
+import com.yanjiazheng.dslock.annotations.ConcurrencyLimit;
+import com.yanjiazheng.dslock.util.DistributedLockClient;
+import com.yanjiazheng.dslock.util.LockHandle;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author hp
+ */
+@Aspect
+@Component
+public class ConcurrencyLimitAspect {
+
+    @Autowired
+    private DistributedLockClient distributedLockClient;
+
+    @Around("@annotation(limit)")
+    public Object aroundConcurrency(ProceedingJoinPoint pjp, ConcurrencyLimit limit) throws Throwable {
+        String name = limit.name().isEmpty() ? pjp.getSignature().toShortString() : limit.name();
+        LockHandle permit = distributedLockClient.getSemaphore(name, limit.permits(), limit.leaseTime(), TimeUnit.MILLISECONDS)
+                .tryAcquire(1, limit.waitTime(), TimeUnit.MILLISECONDS);
+        if (permit == null) {
+            throw new RuntimeException("Concurrency limit exceeded: " + name);
+        }
+        try {
+            return pjp.proceed();
+        } finally {
+            permit.unlock();
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.yanjiazheng.dslock.aop;
+
+import com.yanjiazheng.dslock.annotations.DistributedLock;
+import com.yanjiazheng.dslock.strategy.LockProvider;
+import com.yanjiazheng.dslock.strategy.LockProviderFactory;
+import com.yanjiazheng.dslock.util.LockHandle;
+import org.aspectj.lang.ProceedingJoinPoint;
+import org.aspectj.lang.annotation.Around;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.reflect.MethodSignature;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.expression.MethodBasedEvaluationContext;
+import org.springframework.core.DefaultParameterNameDiscoverer;
+import org.springframework.core.ParameterNameDiscoverer;
+import org.springframework.expression.Expression;
+import org.springframework.expression.ExpressionParser;
+import org.springframework.expression.spel.standard.SpelExpressionParser;
+import org.springframework.stereotype.Component;
+
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author hp
+ */
+@Aspect
+@Component
+public class DistributedLockAspect {
+
+    private final ExpressionParser parser = new SpelExpressionParser();
+
+    private final ParameterNameDiscoverer parameterNames = new DefaultParameterNameDiscoverer();
+
+    /**
+     * 每个方法的锁名称表达式只解析一次
+     */
+    private final Map<Method, Expression> expressions = new ConcurrentHashMap<>();
+
+    @Autowired
+    private LockProviderFactory lockProviderFactory;
+
+    @Around("@annotation(distributedLock)")
+    public Object aroundLock(ProceedingJoinPoint pjp, DistributedLock distributedLock) throws Throwable {
+        String name = this.lockName(pjp, distributedLock);
+        LockProvider provider = lockProviderFactory.route(name, distributedLock.backend());
+        LockHandle lock = provider.tryLock(name, distributedLock.waitTime(), distributedLock.leaseTime(), TimeUnit.MILLISECONDS);
+        if (lock == null) {
+            throw new RuntimeException("Lock wait timeout: " + name + " (" + provider.getName() + ")");
+        }
+        try {
+            return pjp.proceed();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private String lockName(ProceedingJoinPoint pjp, DistributedLock distributedLock) {
+        String name = distributedLock.name();
+        if (name.isEmpty()) {
+            return pjp.getSignature().toShortString();
+        }
+        if (!name.contains("#")) {
+            return name;
+        }
+        Method method = ((MethodSignature) pjp.getSignature()).getMethod();
+        Expression expression = expressions.computeIfAbsent(method, m -> parser.parseExpression(name));
+        Object value = expression.getValue(new MethodBasedEvaluationContext(pjp.getTarget(), method, pjp.getArgs(), parameterNames));
+        if (value == null) {
+            throw new IllegalArgumentException("lock name evaluated to null: " + name);
+        }
+        return value.toString();
+    }
+}
@@ -0,0 +1,26 @@
+package com.yanjiazheng.dslock.aop;
+
+import com.yanjiazheng.dslock.service.StockService;
+import com.yanjiazheng.dslock.util.HotKeyTracker;
+import org.aspectj.lang.annotation.Aspect;
+import org.aspectj.lang.annotation.Before;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+/**
+ * 把 StockService 中按商品编码调用的库存操作记录到热点探测
+ *
+ * @author hp
+ */
+@Aspect
+@Component
+public class HotKeyAspect {
+
+    @Autowired
+    private HotKeyTracker hotKeyTracker;
+
+    @Before("execution(public * com.yanjiazheng.dslock.service.StockService.*(String, ..)) && args(productCode, ..)")
+    public void recordStock(String productCode) {
+        hotKeyTracker.record(StockService.stockKey(productCode));
+    }
+}
@@ -3,6 +3,7 @@ package com.yanjiazheng.dslock.aop;
 import com.yanjiazheng.dslock.annotations.*;
 import com.yanjiazheng.dslock.strategy.RateLimitStrategy;
 import com.yanjiazheng.dslock.strategy.RateLimiterFactory;
+import com.yanjiazheng.dslock.util.HotKeyTracker;
 import org.aspectj.lang.ProceedingJoinPoint;
 import org.aspectj.lang.annotation.Around;
 import org.aspectj.lang.annotation.Aspect;
@@ -19,6 +20,9 @@ public class RateLimiterAspect {
     @Autowired
     private RateLimiterFactory factory;
 
+    @Autowired
+    private HotKeyTracker hotKeyTracker;
+
     @Around("@annotation(fixed)")
     public Object aroundFixed(ProceedingJoinPoint pjp, FixedWindowRateLimit fixed) throws Throwable {
         return doProceed(pjp, "fixedWindowRateLimiter", pjp.getSignature().toShortString(),
@@ -56,6 +60,7 @@ public class RateLimiterAspect {
 
     private Object doProceed(ProceedingJoinPoint pjp, String beanName,
                              String keyPrefix, String... args) throws Throwable {
+        hotKeyTracker.record("ratelimit:" + keyPrefix);
         RateLimitStrategy strat = factory.get(beanName);
         if (!strat.allow(keyPrefix, args)) {
             throw new RuntimeException("Rate limit exceeded: " + beanName);
@@ -0,0 +1,233 @@
+package com.yanjiazheng.dslock.config;
+
+import com.yanjiazheng.dslock.util.LockHandle;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.recipes.locks.InterProcessLock;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.framework.recipes.locks.InterProcessReadWriteLock;
+import org.apache.curator.framework.recipes.locks.InterProcessSemaphoreV2;
+import org.apache.curator.framework.recipes.locks.Lease;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+/**
+ * Curator 锁实例的注册表
+ * <p>
+ * 每个路径只创建一个 InterProcessMutex / InterProcessReadWriteLock / InterProcessSemaphoreV2 并重复使用，
+ * Curator 的锁重入状态保存在实例中，共享实例后同一线程对同一路径的重复加锁才是真正的重入。
+ * 没有持有者且空闲超过 {@link #IDLE_MILLIS} 的实例会被定时清理。
+ * 获取结果统一为 {@link LockHandle}，配合 try-with-resources 保证业务异常时也会释放；
+ * 互斥锁和读写锁必须在加锁线程上释放（Curator 的限制），信号量的租约可以在任意线程释放。
+ *
+ * @author hp
+ */
+@Component
+public class CuratorLockRegistry {
+
+    /**
+     * 空闲实例的保留时间（毫秒）
+     */
+    private static final long IDLE_MILLIS = TimeUnit.MINUTES.toMillis(5);
+
+    @Autowired
+    private CuratorFramework curatorFramework;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private ScheduledExecutorService evictor;
+
+    @PostConstruct
+    public void init() {
+        this.evictor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "curator-lock-evictor");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.evictor.scheduleWithFixedDelay(this::evictIdle, 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        evictor.shutdownNow();
+    }
+
+    /**
+     * 阻塞直到获取互斥锁
+     */
+    public LockHandle lock(String path) throws Exception {
+        return this.tryLock(path, -1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在等待时间内获取互斥锁
+     *
+     * @param time 等待时间，-1 表示一直等待
+     * @return 获取到的锁，超时返回null
+     */
+    public LockHandle tryLock(String path, long time, TimeUnit unit) throws Exception {
+        return this.acquire("mutex:" + path, path, k -> new InterProcessMutex(curatorFramework, path),
+                recipe -> (InterProcessMutex) recipe, time, unit);
+    }
+
+    /**
+     * 在等待时间内获取读锁，读者之间共享
+     */
+    public LockHandle readLock(String path, long time, TimeUnit unit) throws Exception {
+        return this.acquire("rw:" + path, path, k -> new InterProcessReadWriteLock(curatorFramework, path),
+                recipe -> ((InterProcessReadWriteLock) recipe).readLock(), time, unit);
+    }
+
+    /**
+     * 在等待时间内获取写锁，与读锁和其他写锁互斥
+     */
+    public LockHandle writeLock(String path, long time, TimeUnit unit) throws Exception {
+        return this.acquire("rw:" + path, path, k -> new InterProcessReadWriteLock(curatorFramework, path),
+                recipe -> ((InterProcessReadWriteLock) recipe).writeLock(), time, unit);
+    }
+
+    /**
+     * 在等待时间内获取信号量的一个租约
+     *
+     * @param maxLeases 同一路径上的最大租约数
+     * @return 获取到的租约，超时返回null
+     */
+    public LockHandle acquirePermit(String path, int maxLeases, long time, TimeUnit unit) throws Exception {
+        String key = "semaphore:" + path + ":" + maxLeases;
+        Entry entry = this.ref(key, k -> new InterProcessSemaphoreV2(curatorFramework, path, maxLeases));
+        Lease lease = null;
+        try {
+            InterProcessSemaphoreV2 semaphore = (InterProcessSemaphoreV2) entry.recipe;
+            lease = time < 0 ? semaphore.acquire() : semaphore.acquire(time, unit);
+        } finally {
+            if (lease == null) {
+                this.unref(key);
+            }
+        }
+        if (lease == null) {
+            return null;
+        }
+        Lease acquired = lease;
+        return new RecipeHandle(key, path, acquired::close);
+    }
+
+    private LockHandle acquire(String key, String path, Function<String, Object> factory,
+                               Function<Object, InterProcessLock> lockOf, long time, TimeUnit unit) throws Exception {
+        Entry entry = this.ref(key, factory);
+        InterProcessLock lock = lockOf.apply(entry.recipe);
+        boolean acquired = false;
+        try {
+            if (time < 0) {
+                lock.acquire();
+                acquired = true;
+            } else {
+                acquired = lock.acquire(time, unit);
+            }
+        } finally {
+            if (!acquired) {
+                this.unref(key);
+            }
+        }
+        return acquired ? new RecipeHandle(key, path, lock::release) : null;
+    }
+
+    /**
+     * 当前缓存的实例数量
+     */
+    public int size() {
+        return entries.size();
+    }
+
+    private Entry ref(String key, Function<String, Object> factory) {
+        return entries.compute(key, (k, entry) -> {
+            if (entry == null) {
+                entry = new Entry(factory.apply(k));
+            }
+            entry.refs++;
+            return entry;
+        });
+    }
+
+    private void unref(String key) {
+        entries.computeIfPresent(key, (k, entry) -> {
+            entry.refs--;
+            entry.lastUsed = System.currentTimeMillis();
+            return entry;
+        });
+    }
+
+    /**
+     * 清理没有持有者且长时间未使用的实例，与 ref 在同一个 compute 中判断，不会清理刚被引用的实例
+     */
+    private void evictIdle() {
+        long deadline = System.currentTimeMillis() - IDLE_MILLIS;
+        for (String key : entries.keySet()) {
+            entries.computeIfPresent(key, (k, entry) -> entry.refs == 0 && entry.lastUsed < deadline ? null : entry);
+        }
+    }
+
+    private static class Entry {
+
+        private final Object recipe;
+
+        private int refs;
+
+        private long lastUsed = System.currentTimeMillis();
+
+        Entry(Object recipe) {
+            this.recipe = recipe;
+        }
+    }
+
+    private interface Releaser {
+
+        void release() throws Exception;
+    }
+
+    private class RecipeHandle implements LockHandle {
+
+        private final String key;
+
+        private final String name;
+
+        private final Releaser releaser;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        RecipeHandle(String key, String name, Releaser releaser) {
+            this.key = key;
+            this.name = name;
+            this.releaser = releaser;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void unlock() {
+            if (!released.compareAndSet(false, true)) {
+                throw new IllegalMonitorStateException("lock already released: " + name);
+            }
+            try {
+                releaser.release();
+            } catch (IllegalMonitorStateException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new IllegalStateException("failed to release curator lock: " + name, e);
+            } finally {
+                unref(key);
+            }
+        }
+    }
+}
@@ -1,5 +1,6 @@
 package com.yanjiazheng.dslock.controller;
 
+import com.yanjiazheng.dslock.annotations.ConcurrencyLimit;
 import com.yanjiazheng.dslock.annotations.FixedWindowRateLimit;
 import com.yanjiazheng.dslock.pojo.PaymentResponse;
 import com.yanjiazheng.dslock.service.PaymentService;
@@ -19,6 +20,7 @@ public class PaymentController {
 
     // @HybridBucketRateLimit(tokenLimit = 150, queueLimit = 100, window = 5) 
     @FixedWindowRateLimit(limit = 100, window = 5) // 每 5 秒最多允许 100 次请求
+    @ConcurrencyLimit(name = "payment:query", permits = 20, waitTime = 200) // 整个集群同时最多 20 个支付查询
     @GetMapping("/payment/query")
     public PaymentResponse queryPayment(@RequestParam String orderId) {
         if (orderId == null || orderId.trim().isEmpty()) {
@@ -1,41 +1,197 @@
 package com.yanjiazheng.dslock.controller;
 
+import com.yanjiazheng.dslock.pojo.DeductResult;
+import com.yanjiazheng.dslock.service.ReservationService;
 import com.yanjiazheng.dslock.service.StockService;
+import com.yanjiazheng.dslock.strategy.LockProviderFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
 @RestController
 public class StockController {
 
     @Autowired
     private StockService stockService;
 
+    @Autowired
+    private ReservationService reservationService;
+
+    @Autowired
+    private LockProviderFactory lockProviderFactory;
+
+    /**
+     * 扣减一个商品的库存，不同商品使用不同的锁和库存键，互不阻塞
+     *
+     * @param productCode 商品编码（SKU）
+     * @param strategy    加锁方式，默认 routed：使用 @DistributedLock，后端由配置中的锁路由决定（见 lock/routes）
+     */
     @GetMapping("check/lock")
-    public String checkAndLock() {
-
-        // 1. 使用jvm加锁
-        // this.stockService.checkAndLockByJvm();
-        // 2. 使用数据库事务操作加锁
-        // this.stockService.checkAndLockByTransaction();
-        // 3. 使用数据库乐观锁加锁
-        // this.stockService.checkAndLockByOptimisticLock();
-        // 4.  使用redis乐观锁加锁
-        // this.stockService.deductByRedisOptimisticLock();
-        // 5. 使用redis分布式锁加锁--简单加锁
-        // this.stockService.deductByRedisDistributedLock();
-        // 6. 使用redis分布式锁加锁--全面封装
-        // this.stockService.deductByRedisLockEncapsulation();
-        // 7. 使用Redisson分布式锁加锁
-        // this.stockService.checkAndLockByRedisson();
-        // 8 使用zookeeper分布式锁加锁
-        // this.stockService.checkAndLockByZookeeper();
-        // 9. 使用curator实现分布式锁
-        // this.stockService.checkAndLockByCurator();
-        // 10. 使用mysql数据库实现分布式锁
-        this.stockService.checkAndLockByMySQL();
+    public String checkAndLock(@RequestParam String productCode, @RequestParam(defaultValue = "routed") String strategy) {
+        switch (strategy) {
+            // 使用jvm加锁
+            case "jvm" -> this.stockService.checkAndLockByJvm(productCode);
+            // 使用数据库事务操作加锁
+            case "transaction" -> this.stockService.checkAndLockByTransaction(productCode);
+            // 使用数据库乐观锁加锁
+            case "optimistic" -> this.stockService.checkAndLockByOptimisticLock(productCode);
+            // 使用redis乐观锁加锁
+            case "redis-optimistic" -> this.stockService.deductByRedisOptimisticLock(productCode);
+            // 使用redis分布式锁加锁--简单加锁
+            case "redis-simple" -> this.stockService.deductByRedisDistributedLock(productCode);
+            // 使用redis分布式锁加锁--全面封装
+            case "redis" -> this.stockService.deductByRedisLockEncapsulation(productCode);
+            // 使用Redisson分布式锁加锁
+            case "redisson" -> this.stockService.checkAndLockByRedisson(productCode);
+            // 使用zookeeper分布式锁加锁
+            case "zookeeper" -> this.stockService.checkAndLockByZookeeper(productCode);
+            // 使用curator实现分布式锁
+            case "curator" -> this.stockService.checkAndLockByCurator(productCode);
+            // 使用mysql数据库实现分布式锁
+            case "mysql" -> this.stockService.checkAndLockByMySQL(productCode);
+            // 使用两级锁（本地排队 + redis分布式锁）
+            case "hierarchical" -> this.stockService.deductByHierarchicalLock(productCode);
+            // 使用redis读写锁的写锁，与查询库存的读锁互斥
+            case "redis-write" -> this.stockService.deductByRedisWriteLock(productCode);
+            // 使用zookeeper读写锁的写锁
+            case "zookeeper-write" -> this.stockService.checkAndLockByZkWriteLock(productCode);
+            // 使用mysql GET_LOCK 咨询锁
+            case "mysql-advisory" -> this.stockService.checkAndLockByMySQLAdvisoryLock(productCode);
+            // 使用mysql租约表（带过期时间和续期）
+            case "mysql-lease" -> this.stockService.checkAndLockByMySQLLease(productCode);
+            // 使用redisson分布式锁并合并本节点同一商品的临界区
+            case "redisson-combined" -> this.stockService.checkAndLockByRedissonCombined(productCode);
+            case "routed" -> this.stockService.deductByRoutedLock(productCode);
+            default -> throw new IllegalArgumentException("unknown strategy: " + strategy);
+        }
         return "验库存并锁库存成功！";
     }
 
+    /**
+     * 查看当前生效的锁路由（锁名称或前缀* -> 后端）和默认后端
+     */
+    @GetMapping("lock/routes")
+    public Map<String, String> lockRoutes() {
+        Map<String, String> routes = new LinkedHashMap<>(this.lockProviderFactory.routes());
+        routes.put("*", this.lockProviderFactory.backendOf("*", null));
+        return routes;
+    }
+
+    /**
+     * 运行时修改锁路由，所有节点在几秒内生效，不需要重新部署
+     *
+     * @param name    锁名称，或以 * 结尾的前缀，例如 lock:*
+     * @param backend 后端名称，为空时删除该路由，恢复使用配置文件中的路由
+     */
+    @PostMapping("lock/route")
+    public String lockRoute(@RequestParam String name, @RequestParam(defaultValue = "") String backend) {
+        this.lockProviderFactory.setRoute(name, backend);
+        return name + " -> " + this.lockProviderFactory.backendOf(name, null);
+    }
+
+    /**
+     * 异步加锁：等待锁期间立即归还 Tomcat 线程，请求数不再受限于线程池大小
+     */
+    @GetMapping("check/lock/async")
+    public CompletableFuture<String> checkAndLockAsync(@RequestParam String productCode) {
+        return this.stockService.deductByRedisLockAsync(productCode).thenApply(v -> "验库存并锁库存成功！");
+    }
+
+    /**
+     * 无锁扣减，返回结果中包含冲突后的重试次数
+     *
+     * @param mode mysql：条件更新；redis：Lua 脚本；optimistic：数据库乐观锁；redis-optimistic：redis WATCH 乐观锁；
+     *             inventory：常驻 redis 的库存，异步回写数据库；quota：节点本地配额；segment：分段库存；
+     *             adaptive：自动探测热点，热点商品使用节点本地配额
+     */
+    @GetMapping("check/lock/free")
+    public DeductResult checkAndLockFree(@RequestParam String productCode, @RequestParam(defaultValue = "mysql") String mode) {
+        switch (mode) {
+            case "redis":
+                return this.stockService.deductByRedisScript(productCode);
+            case "optimistic":
+                return this.stockService.checkAndLockByOptimisticLock(productCode);
+            case "redis-optimistic":
+                return this.stockService.deductByRedisOptimisticLock(productCode);
+            case "inventory":
+                return this.stockService.deductByRedisInventory(productCode);
+            case "quota":
+                return this.stockService.deductByLocalQuota(productCode);
+            case "segment":
+                return this.stockService.deductBySegments(productCode);
+            case "adaptive":
+                return this.stockService.deductAdaptive(productCode);
+            default:
+                return this.stockService.deductByConditionalUpdate(productCode);
+        }
+    }
+
+    /**
+     * 批量扣减：短时间内的并发请求合并为一条条件更新
+     */
+    @GetMapping("check/lock/batch")
+    public CompletableFuture<String> checkAndLockBatch(@RequestParam String productCode) {
+        return this.stockService.deductByBatch(productCode).thenApply(success -> success ? "验库存并锁库存成功！" : "库存不足！");
+    }
+
+    /**
+     * 预留库存，返回预留id，之后在有效期内确认或取消
+     *
+     * @param ttl 预留的有效期（秒）
+     */
+    @PostMapping("stock/reserve")
+    public String reserve(@RequestParam String productCode, @RequestParam(defaultValue = "1") int amount,
+                          @RequestParam(defaultValue = "600") long ttl) {
+        String reservationId = this.stockService.reserveStock(productCode, amount, ttl);
+        return reservationId == null ? "库存不足！" : reservationId;
+    }
+
+    /**
+     * 支付成功后确认预留
+     */
+    @PostMapping("stock/confirm")
+    public String confirm(@RequestParam String reservationId) {
+        return this.reservationService.confirm(reservationId) ? "确认成功！" : "预留不存在或已过期！";
+    }
+
+    /**
+     * 取消预留，归还库存
+     */
+    @PostMapping("stock/cancel")
+    public String cancel(@RequestParam String reservationId) {
+        return this.reservationService.cancel(reservationId) ? "取消成功！" : "预留不存在或已结束！";
+    }
+
+    /**
+     * 把热点商品的库存拆分为多个分段，配合 check/lock/free?mode=segment 使用
+     */
+    @PostMapping("stock/split")
+    public String split(@RequestParam String productCode, @RequestParam(defaultValue = "8") int shards) {
+        return "库存分段数：" + this.stockService.splitStock(productCode, shards);
+    }
+
+    /**
+     * 手动预热库存：把 db_stock 中尚未加载的库存写入 redis
+     */
+    @GetMapping("stock/warm-up")
+    public String warmUp() {
+        return "库存预热完成，新写入：" + this.stockService.warmUpInventory();
+    }
+
+    /**
+     * 查询库存：使用读锁，并发的查询之间不互相阻塞，只与扣减库存的写锁互斥
+     */
+    @GetMapping("stock")
+    public String queryStock(@RequestParam String productCode) {
+        // 使用zookeeper读写锁：this.stockService.queryStockByZkReadLock(productCode).getCount()
+        return "当前库存：" + this.stockService.queryStockByRedisReadLock(productCode);
+    }
+
 
 }
@@ -0,0 +1,35 @@
+package com.yanjiazheng.dslock.lockprovider;
+
+import com.yanjiazheng.dslock.config.CuratorLockRegistry;
+import com.yanjiazheng.dslock.strategy.LockProvider;
+import com.yanjiazheng.dslock.util.LockHandle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * curator 互斥锁，锁名称中的 ':' 映射为路径分隔符，
+ * 例如 lock:1001 对应 /curator/lock/1001，与 StockService 中直接使用 curator 的扣减互斥
+ *
+ * @author hp
+ */
+@Component
+public class CuratorLockProvider implements LockProvider {
+
+    @Autowired
+    private CuratorLockRegistry curatorLockRegistry;
+
+    @Override
+    public String getName() {
+        return "curator";
+    }
+
+    @Override
+    public LockHandle tryLock(String lockName, long waitTime, long leaseTime, TimeUnit unit) throws Exception {
+        if (leaseTime > 0) {
+            throw new IllegalArgumentException("lock provider " + this.getName() + " doesn't support leaseTime");
+        }
+        return this.curatorLockRegistry.tryLock("/curator/" + lockName.replace(':', '/'), waitTime, unit);
+    }
+}
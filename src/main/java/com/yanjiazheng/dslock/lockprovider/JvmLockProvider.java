@@ -0,0 +1,34 @@
+package com.yanjiazheng.dslock.lockprovider;
+
+import com.yanjiazheng.dslock.strategy.AbstractLockProvider;
+import com.yanjiazheng.dslock.util.LockHandle;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * jvm 本地锁：只在单个节点内互斥，只适合单实例部署或只需要本地互斥的锁名称
+ *
+ * @author hp
+ */
+@Component
+public class JvmLockProvider extends AbstractLockProvider {
+
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+
+    @Override
+    public String getName() {
+        return "jvm";
+    }
+
+    @Override
+    public LockHandle tryLock(String lockName, long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+        if (leaseTime > 0) {
+            throw new IllegalArgumentException("lock provider " + this.getName() + " doesn't support leaseTime");
+        }
+        return this.acquire(lockName, this.locks.computeIfAbsent(lockName, k -> new ReentrantLock()), waitTime, unit);
+    }
+}
@@ -0,0 +1,33 @@
+package com.yanjiazheng.dslock.lockprovider;
+
+import com.yanjiazheng.dslock.strategy.AbstractLockProvider;
+import com.yanjiazheng.dslock.util.LockHandle;
+import com.yanjiazheng.dslock.util.MysqlLockClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * mysql 租约锁：没有固定租期时持有期间自动续期，节点宕机后最多经过一个租期被其他节点获取
+ *
+ * @author hp
+ */
+@Component
+public class MysqlLockProvider extends AbstractLockProvider {
+
+    @Autowired
+    private MysqlLockClient mysqlLockClient;
+
+    @Override
+    public String getName() {
+        return "mysql";
+    }
+
+    @Override
+    public LockHandle tryLock(String lockName, long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+        // 固定租期时不续期，否则使用默认租期并自动续期
+        return this.acquire(lockName, leaseTime > 0 ? this.mysqlLockClient.getLeaseLock(lockName, leaseTime, unit, false)
+                : this.mysqlLockClient.getLeaseLock(lockName), waitTime, unit);
+    }
+}
@@ -0,0 +1,37 @@
+package com.yanjiazheng.dslock.lockprovider;
+
+import com.yanjiazheng.dslock.strategy.AbstractLockProvider;
+import com.yanjiazheng.dslock.util.DistributedLockClient;
+import com.yanjiazheng.dslock.util.DistributedRedisLock;
+import com.yanjiazheng.dslock.util.LockHandle;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自研的 redis 可重入锁（{@link DistributedRedisLock}）
+ *
+ * @author hp
+ */
+@Component
+public class RedisLockProvider extends AbstractLockProvider {
+
+    @Autowired
+    private DistributedLockClient distributedLockClient;
+
+    @Override
+    public String getName() {
+        return "redis";
+    }
+
+    @Override
+    public LockHandle tryLock(String lockName, long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+        DistributedRedisLock lock = this.distributedLockClient.getRedisLock(lockName);
+        if (leaseTime <= 0) {
+            return this.acquire(lockName, lock, waitTime, unit);
+        }
+        // 固定租期：精确到毫秒，不登记看门狗
+        return lock.tryLock(waitTime, leaseTime, unit) ? this.wrap(lockName, lock) : null;
+    }
+}
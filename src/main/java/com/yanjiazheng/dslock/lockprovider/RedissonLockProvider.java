@@ -0,0 +1,39 @@
+package com.yanjiazheng.dslock.lockprovider;
+
+import com.yanjiazheng.dslock.strategy.AbstractLockProvider;
+import com.yanjiazheng.dslock.util.LockHandle;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * redisson 可重入锁，租期为 -1 时由 redisson 的看门狗续期
+ *
+ * @author hp
+ */
+@Component
+public class RedissonLockProvider extends AbstractLockProvider {
+
+    @Autowired
+    private RedissonClient redissonClient;
+
+    @Override
+    public String getName() {
+        return "redisson";
+    }
+
+    @Override
+    public LockHandle tryLock(String lockName, long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+        RLock lock = this.redissonClient.getLock(lockName);
+        // redisson 的 tryLock 把 -1 当作不等待，一直等待时使用 lockInterruptibly
+        if (waitTime < 0) {
+            lock.lockInterruptibly(leaseTime, unit);
+        } else if (!lock.tryLock(waitTime, leaseTime, unit)) {
+            return null;
+        }
+        return this.wrap(lockName, lock);
+    }
+}
@@ -0,0 +1,34 @@
+package com.yanjiazheng.dslock.lockprovider;
+
+import com.yanjiazheng.dslock.strategy.AbstractLockProvider;
+import com.yanjiazheng.dslock.util.LockHandle;
+import com.yanjiazheng.dslock.util.ZkClient;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 自研的 zookeeper 锁，临时节点随会话过期删除，没有租期
+ *
+ * @author hp
+ */
+@Component
+public class ZookeeperLockProvider extends AbstractLockProvider {
+
+    @Autowired
+    private ZkClient zkClient;
+
+    @Override
+    public String getName() {
+        return "zookeeper";
+    }
+
+    @Override
+    public LockHandle tryLock(String lockName, long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+        if (leaseTime > 0) {
+            throw new IllegalArgumentException("lock provider " + this.getName() + " doesn't support leaseTime");
+        }
+        return this.acquire(lockName, this.zkClient.getZkDistributedLock(lockName), waitTime, unit);
+    }
+}
@@ -0,0 +1,32 @@
+package com.yanjiazheng.dslock.mapper;
+
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * 租约锁表，过期时间使用数据库时间，避免各节点时钟不一致
+ * <pre>
+ * CREATE TABLE tb_lock_lease (
+ *     lock_name   VARCHAR(64) NOT NULL PRIMARY KEY,
+ *     owner       VARCHAR(64) NOT NULL,
+ *     expire_time DATETIME(3) NOT NULL
+ * );
+ * </pre>
+ *
+ * @author hp
+ */
+public interface LockLeaseMapper {
+
+    /**
+     * 锁不存在、已过期或本来就属于该持有者时写入持有者和过期时间，否则保持不变
+     */
+    int tryAcquire(@Param("lockName") String lockName, @Param("owner") String owner, @Param("leaseMillis") long leaseMillis);
+
+    String selectOwner(@Param("lockName") String lockName);
+
+    /**
+     * 续期，返回0表示锁已不属于该持有者
+     */
+    int renew(@Param("lockName") String lockName, @Param("owner") String owner, @Param("leaseMillis") long leaseMillis);
+
+    int release(@Param("lockName") String lockName, @Param("owner") String owner);
+}
@@ -0,0 +1,47 @@
+package com.yanjiazheng.dslock.mapper;
+
+import com.yanjiazheng.dslock.pojo.Reservation;
+import org.apache.ibatis.annotations.Param;
+
+import java.util.List;
+
+/**
+ * 库存预留表，过期时间使用数据库时间，避免各节点时钟不一致
+ * <pre>
+ * CREATE TABLE tb_stock_reservation (
+ *     id          VARCHAR(64) NOT NULL PRIMARY KEY,
+ *     stock_id    BIGINT      NOT NULL,
+ *     amount      INT         NOT NULL,
+ *     status      TINYINT     NOT NULL,
+ *     expire_time DATETIME(3) NOT NULL,
+ *     create_time DATETIME(3) NOT NULL,
+ *     KEY idx_status_expire (status, expire_time)
+ * );
+ * </pre>
+ * 状态只能从 {@link Reservation#RESERVED} 转换为其他状态，每次转换都是带原状态条件的更新，
+ * 确认、取消和过期清理同时发生时只有一个会成功，库存只会归还一次。
+ *
+ * @author hp
+ */
+public interface ReservationMapper {
+
+    int insert(@Param("id") String id, @Param("stockId") Long stockId, @Param("amount") int amount,
+               @Param("ttlMillis") long ttlMillis);
+
+    Reservation selectById(@Param("id") String id);
+
+    /**
+     * 确认未过期的预留，返回0表示预留不存在、已过期或已经结束
+     */
+    int confirm(@Param("id") String id);
+
+    /**
+     * 把预留中的记录改为取消或过期，返回0表示已经结束
+     */
+    int release(@Param("id") String id, @Param("status") int status);
+
+    /**
+     * 查询已过期但还没有归还库存的预留
+     */
+    List<Reservation> selectExpired(@Param("limit") int limit);
+}
@@ -3,6 +3,10 @@ package com.yanjiazheng.dslock.mapper;
 import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.yanjiazheng.dslock.pojo.Stock;
 import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.cursor.Cursor;
+
+import java.util.List;
 
 /**
  * @author hp
@@ -11,4 +15,42 @@ import org.apache.ibatis.annotations.Mapper;
 public interface StockMapper extends BaseMapper<Stock> {
 
     public Stock selectStockForUpdate(Long id);
+
+    /**
+     * 库存充足时扣减库存，判断和扣减在同一条语句中完成
+     *
+     * @return 1 扣减成功，0 库存不足
+     */
+    public int deductStock(@Param("id") Long id, @Param("amount") int amount);
+
+    /**
+     * 归还库存（取消或过期的预留）
+     */
+    public int restoreStock(@Param("id") Long id, @Param("amount") int amount);
+
+    /**
+     * 回写 redis 中库存的增量，并增加版本号，使数据库乐观锁的并发更新失败重试；
+     * 不判断库存是否充足，去重由 {@link StockWriteBackMapper} 的回写进度保证
+     */
+    public int applyDelta(@Param("id") Long id, @Param("delta") long delta);
+
+    /**
+     * 流式读取全部库存，必须在事务中遍历，遍历结束前占用一个连接
+     */
+    public Cursor<Stock> scanAll();
+
+    /**
+     * 按id顺序查询一个商品的全部库存记录（分段），并按顺序加行锁，多个事务同时加锁不会死锁
+     */
+    public List<Stock> selectByProductCodeForUpdate(@Param("productCode") String productCode);
+
+    /**
+     * 按id顺序查询一个商品的全部库存记录id
+     */
+    public List<Long> selectIdsByProductCode(@Param("productCode") String productCode);
+
+    /**
+     * 查询已经拆分为多个分段的商品编码
+     */
+    public List<String> selectSplitProductCodes();
 }
@@ -0,0 +1,35 @@
+package com.yanjiazheng.dslock.mapper;
+
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * 库存回写进度表：每个商品、每个回写消费者（实例唯一的消费者id）最后一条已回写的流记录id
+ * <pre>
+ * CREATE TABLE tb_stock_write_back (
+ *     stock_id BIGINT      NOT NULL,
+ *     consumer VARCHAR(64) NOT NULL,
+ *     last_id  VARCHAR(41) NOT NULL,
+ *     PRIMARY KEY (stock_id, consumer)
+ * );
+ * </pre>
+ * 同一个消费者收到的记录id是递增的，与库存的增量在同一个事务中更新，
+ * 重放未 ACK 的记录时跳过不大于 last_id 的记录，每个增量只会回写一次。
+ * 其他实例接管已停止消费者的记录时使用原消费者的进度，同一进度上的回写由行锁串行执行。
+ * last_id 是补零到定长的流记录id（见 InventoryService），可以直接按字符串比较。
+ *
+ * @author hp
+ */
+public interface StockWriteBackMapper {
+
+    /**
+     * 第一次回写时创建进度记录，已存在时忽略
+     */
+    int insertIgnore(@Param("stockId") Long stockId, @Param("consumer") String consumer);
+
+    /**
+     * 查询并锁定回写进度，同一消费者的并发回写（例如停机时的最后一次回写）串行执行
+     */
+    String selectLastIdForUpdate(@Param("stockId") Long stockId, @Param("consumer") String consumer);
+
+    int updateLastId(@Param("stockId") Long stockId, @Param("consumer") String consumer, @Param("lastId") String lastId);
+}
@@ -0,0 +1,27 @@
+package com.yanjiazheng.dslock.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * 无锁扣减的结果
+ *
+ * @author hp
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DeductResult {
+
+    /**
+     * 是否扣减成功，库存不足或重试次数用完时为false
+     */
+    private boolean success;
+
+    /**
+     * 冲突后重试的次数，单条原子语句的方式始终为0
+     */
+    private int retries;
+
+}
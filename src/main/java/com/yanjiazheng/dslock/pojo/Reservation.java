@@ -0,0 +1,45 @@
+package com.yanjiazheng.dslock.pojo;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Date;
+
+/**
+ * 库存预留记录
+ *
+ * @author hp
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class Reservation {
+
+    /**
+     * 已预留，库存已从 db_stock 中移出，等待确认或取消
+     */
+    public static final int RESERVED = 0;
+
+    /**
+     * 已确认，扣减成为永久的
+     */
+    public static final int CONFIRMED = 1;
+
+    /**
+     * 已取消，库存已归还
+     */
+    public static final int CANCELLED = 2;
+
+    /**
+     * 超时未确认，库存已由清理任务归还
+     */
+    public static final int EXPIRED = 3;
+
+    private String id;
+    private Long stockId;
+    private Integer amount;
+    private Integer status;
+    private Date expireTime;
+    private Date createTime;
+}
@@ -49,6 +49,11 @@ public class HybridBucketRateLimiter extends AbstractRateLimiter {
             Long.class
     );
 
+    @Override
+    protected RedisScript<Long> getScript() {
+        return script;
+    }
+
     @Override
     public boolean allow(String key, String... args) {
         List<String> keys = java.util.Arrays.asList(key, key + ":queue");
@@ -41,6 +41,11 @@ public class TokenBucketRateLimiter extends AbstractRateLimiter {
             Long.class
     );
 
+    @Override
+    protected RedisScript<Long> getScript() {
+        return script;
+    }
+
     @Override
     public boolean allow(String key, String... args) {
         Long result = executeScript(script, key, args);
@@ -0,0 +1,130 @@
+package com.yanjiazheng.dslock.service;
+
+import com.yanjiazheng.dslock.mapper.StockMapper;
+import com.yanjiazheng.dslock.pojo.Stock;
+import org.apache.ibatis.cursor.Cursor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.ReturnType;
+import org.springframework.data.redis.connection.StringRedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * 把 db_stock 中的库存批量预热到 redis
+ * <p>
+ * 通过 MyBatis 游标逐行读取整张表，每 {@link #BATCH} 行用一次管道写入 redis，内存占用和往返次数都与表大小无关。
+ * 每个商品通过 {@link InventoryService#LOAD_SCRIPT} 写入 {@code inventory:<id>}，只在 hash 不存在时写入 count 和 version，
+ * 已经在 redis 中扣减过的库存不会被数据库中的旧值覆盖，因此可以在运行中的系统上重复执行。
+ * 每个商品的库存同时以 SETNX 写入各种锁方式使用的 {@code stock:<商品编码>} 键（见 {@link StockService#stockKey(String)}），
+ * 已经拆分为分段的商品跳过这一步，分段只能按分段扣减，任何一个分段的库存都不是整个商品的库存。
+ *
+ * @author hp
+ */
+@Service
+public class InventoryLoader {
+
+    /**
+     * 每个管道写入的行数
+     */
+    private static final int BATCH = 5000;
+
+    @Autowired
+    private StockMapper stockMapper;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 应用启动完成后预热一次，失败时不影响启动
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void warmUp() {
+        try {
+            this.load();
+        } catch (Exception e) {
+            System.out.println("库存预热失败：" + e.getMessage());
+        }
+    }
+
+    /**
+     * 预热全部库存，同一时间只执行一次
+     *
+     * @return 新写入 redis 的商品数，已存在的不计入
+     */
+    public synchronized long load() {
+        long begin = System.currentTimeMillis();
+        // 管道中不能处理 NOSCRIPT，先确保脚本已经加载
+        String script = InventoryService.LOAD_SCRIPT.getScriptAsString();
+        this.redisTemplate.execute((RedisCallback<String>) connection ->
+                connection.scriptingCommands().scriptLoad(script.getBytes(StandardCharsets.UTF_8)));
+
+        // 拆分过的商品通常只有少数热点商品，扫描前一次查出
+        Set<String> split = new HashSet<>(this.stockMapper.selectSplitProductCodes());
+        long[] counts = new long[2];
+        this.transactionTemplate.executeWithoutResult(status -> {
+            try (Cursor<Stock> cursor = this.stockMapper.scanAll()) {
+                List<Stock> batch = new ArrayList<>(BATCH);
+                for (Stock stock : cursor) {
+                    batch.add(stock);
+                    if (batch.size() == BATCH) {
+                        this.write(batch, split, counts, begin);
+                    }
+                }
+                if (!batch.isEmpty()) {
+                    this.write(batch, split, counts, begin);
+                }
+            } catch (Exception e) {
+                throw new IllegalStateException("failed to scan db_stock", e);
+            }
+        });
+        System.out.println("库存预热完成：共 " + counts[0] + " 条，新写入 " + counts[1] + " 条，耗时 "
+                + (System.currentTimeMillis() - begin) + " ms");
+        return counts[1];
+    }
+
+    /**
+     * 用一次管道写入一批库存，并清空这一批
+     *
+     * @param split  已经拆分为分段的商品编码，不写入 {@code stock:<商品编码>}
+     * @param counts [0] 已处理行数，[1] 新写入行数
+     */
+    private void write(List<Stock> batch, Set<String> split, long[] counts, long begin) {
+        String sha = InventoryService.LOAD_SCRIPT.getSha1();
+        List<Object> results = this.redisTemplate.executePipelined((RedisCallback<Object>) connection -> {
+            StringRedisConnection conn = (StringRedisConnection) connection;
+            for (Stock stock : batch) {
+                conn.evalSha(sha, ReturnType.BOOLEAN, 1, InventoryService.key(stock.getId()),
+                        String.valueOf(stock.getCount()), String.valueOf(stock.getVersion()));
+            }
+            for (Stock stock : batch) {
+                if (stock.getProductCode() != null && !split.contains(stock.getProductCode())) {
+                    conn.setNX(StockService.stockKey(stock.getProductCode()), String.valueOf(stock.getCount()));
+                }
+            }
+            return null;
+        });
+        // 前 batch.size() 个结果是 inventory hash 的写入结果
+        for (int i = 0; i < batch.size(); i++) {
+            if (Boolean.TRUE.equals(results.get(i))) {
+                counts[1]++;
+            }
+        }
+        counts[0] += batch.size();
+        batch.clear();
+        System.out.println("库存预热：已处理 " + counts[0] + " 条，新写入 " + counts[1] + " 条，耗时 "
+                + (System.currentTimeMillis() - begin) + " ms");
+    }
+}
@@ -0,0 +1,469 @@
+package com.yanjiazheng.dslock.service;
+
+import com.yanjiazheng.dslock.mapper.StockMapper;
+import com.yanjiazheng.dslock.mapper.StockWriteBackMapper;
+import com.yanjiazheng.dslock.pojo.Stock;
+import com.yanjiazheng.dslock.util.RedisScriptRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Range;
+import org.springframework.data.redis.connection.stream.Consumer;
+import org.springframework.data.redis.connection.stream.MapRecord;
+import org.springframework.data.redis.connection.stream.PendingMessage;
+import org.springframework.data.redis.connection.stream.PendingMessages;
+import org.springframework.data.redis.connection.stream.ReadOffset;
+import org.springframework.data.redis.connection.stream.RecordId;
+import org.springframework.data.redis.connection.stream.StreamOffset;
+import org.springframework.data.redis.connection.stream.StreamReadOptions;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.net.InetAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 常驻 redis 的库存，异步回写 mysql
+ * <p>
+ * 每个商品的库存保存在 {@code inventory:<id>} hash 中（count、version），扣减由 Lua 脚本原子完成，请求路径上不访问数据库。
+ * 每次扣减后脚本把库存的增量追加到 {@link #STREAM_KEY} 流中，作为持久的变更日志；
+ * 回写线程通过消费者组读取变更，同一商品的增量合并后执行 {@code update db_stock set count = count + ?}，
+ * 并在同一个事务中记录该消费者最后回写的记录id（{@link StockWriteBackMapper}），之后再 ACK。
+ * 回写的是增量而不是绝对值，数据库上其他方式的扣减和归还（条件更新、批量扣减、分段库存、预留）不会被覆盖；
+ * 宕机后重放未 ACK 的记录时跳过已经回写过的记录id，每个增量只回写一次。
+ * 消费者id（{@code dslock.inventory.consumer}，默认 主机名:端口）每个实例唯一、重启后不变，回写进度按消费者id区分，
+ * 两个实例不会共用同一个进度；没有再回来的消费者（例如换了主机名）未 ACK 的记录由其他实例接管，仍按原消费者的进度去重。
+ * 流不按长度裁剪：回写落后时（例如数据库不可用）记录全部保留，回写后只裁掉消费者组中最早的未 ACK 记录之前的部分。
+ * <p>
+ * hash 只在不存在时从数据库加载，之后不会感知数据库上的扣减：同一商品同时使用本类和直接扣减数据库的方式时，
+ * 两边会卖出同一份库存，数据库中的库存可能变为负数，因此同一商品只应使用其中一种方式售卖。
+ *
+ * @author hp
+ */
+@Service
+public class InventoryService {
+
+    static final String KEY_PREFIX = "inventory:";
+
+    static final String STREAM_KEY = "inventory:stream";
+
+    private static final String GROUP = "inventory-writer";
+
+    /**
+     * 每次从流中读取的最大记录数
+     */
+    private static final int BATCH = 500;
+
+    /**
+     * 回写间隔（毫秒）
+     */
+    private static final long FLUSH_INTERVAL = 200;
+
+    /**
+     * 检查其他消费者未 ACK 记录的间隔（毫秒）
+     */
+    private static final long CLAIM_INTERVAL = 30000;
+
+    /**
+     * 消费者的未 ACK 记录全部空闲超过该时间（毫秒）时视为消费者已经停止，由其他实例接管；
+     * 存活的消费者每次回写前都会重新读取自己的未 ACK 记录，空闲时间不会超过一个回写间隔
+     */
+    private static final long CLAIM_IDLE = 60000;
+
+
+    /**
+     * 库存充足时扣减并记录变更，返回扣减后的库存；库存不足返回-1，库存未加载返回-2
+     */
+    private static final RedisScript<Long> DEDUCT_SCRIPT = RedisScript.of(
+            "local count = redis.call('hget', KEYS[1], 'count') " +
+                    "if not count then " +
+                    "   return -2 " +
+                    "end " +
+                    "if tonumber(count) < tonumber(ARGV[2]) then " +
+                    "   return -1 " +
+                    "end " +
+                    "count = redis.call('hincrby', KEYS[1], 'count', -tonumber(ARGV[2])) " +
+                    "redis.call('hincrby', KEYS[1], 'version', 1) " +
+                    // 记录增量，回写时按记录id去重
+                    "redis.call('xadd', KEYS[2], '*', 'id', ARGV[1], 'delta', -tonumber(ARGV[2])) " +
+                    "return count",
+            Long.class
+    );
+
+    /**
+     * 租出最多 ARGV[2] 个库存并记录变更，返回实际租出的数量（库存不足时只租出剩余的部分）；库存未加载返回-2
+     */
+    private static final RedisScript<Long> LEASE_SCRIPT = RedisScript.of(
+            "local count = redis.call('hget', KEYS[1], 'count') " +
+                    "if not count then " +
+                    "   return -2 " +
+                    "end " +
+                    "local granted = math.min(tonumber(count), tonumber(ARGV[2])) " +
+                    "if granted <= 0 then " +
+                    "   return 0 " +
+                    "end " +
+                    "redis.call('hincrby', KEYS[1], 'count', -granted) " +
+                    "redis.call('hincrby', KEYS[1], 'version', 1) " +
+                    "redis.call('xadd', KEYS[2], '*', 'id', ARGV[1], 'delta', -granted) " +
+                    "return granted",
+            Long.class
+    );
+
+    /**
+     * 归还未使用的库存并记录变更，返回归还后的库存；库存未加载返回-2
+     */
+    private static final RedisScript<Long> GIVE_BACK_SCRIPT = RedisScript.of(
+            "if redis.call('exists', KEYS[1]) == 0 then " +
+                    "   return -2 " +
+                    "end " +
+                    "local count = redis.call('hincrby', KEYS[1], 'count', ARGV[2]) " +
+                    "redis.call('hincrby', KEYS[1], 'version', 1) " +
+                    "redis.call('xadd', KEYS[2], '*', 'id', ARGV[1], 'delta', ARGV[2]) " +
+                    "return count",
+            Long.class
+    );
+
+    /**
+     * 裁掉消费者组中已经全部 ACK 的记录：保留最早的未 ACK 记录，没有未 ACK 记录时保留最后投递的记录之后的部分，
+     * 还没有投递给任何消费者的记录不会被裁掉；返回裁掉的记录数
+     */
+    private static final RedisScript<Long> TRIM_SCRIPT = RedisScript.of(
+            "local minId = redis.call('xpending', KEYS[1], ARGV[1])[2] " +
+                    "if not minId then " +
+                    "   for _, group in ipairs(redis.call('xinfo', 'groups', KEYS[1])) do " +
+                    "       local info = {} " +
+                    "       for i = 1, #group, 2 do " +
+                    "           info[group[i]] = group[i + 1] " +
+                    "       end " +
+                    "       if info['name'] == ARGV[1] then " +
+                    "           minId = info['last-delivered-id'] " +
+                    "       end " +
+                    "   end " +
+                    "end " +
+                    "if not minId then " +
+                    "   return 0 " +
+                    "end " +
+                    "return redis.call('xtrim', KEYS[1], 'MINID', '~', minId)",
+            Long.class
+    );
+
+    /**
+     * hash 不存在时写入库存和版本号，已存在时不覆盖
+     */
+    static final RedisScript<Boolean> LOAD_SCRIPT = RedisScript.of(
+            "if redis.call('exists', KEYS[1]) == 0 " +
+                    "then " +
+                    "   redis.call('hset', KEYS[1], 'count', ARGV[1], 'version', ARGV[2]) " +
+                    "   return 1 " +
+                    "end " +
+                    "return 0",
+            Boolean.class
+    );
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Autowired
+    private StockMapper stockMapper;
+
+    @Autowired
+    private StockWriteBackMapper writeBackMapper;
+
+    @Autowired
+    private RedisScriptRegistry scriptRegistry;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 消费者id，每个实例唯一，重启后不变才能读到宕机前未 ACK 的记录；为空时使用 主机名:端口
+     */
+    @Value("${dslock.inventory.consumer:}")
+    private String consumer;
+
+    @Value("${server.port:8080}")
+    private int port;
+
+    private volatile boolean groupCreated;
+
+    private final ScheduledExecutorService flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "inventory-write-back");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        this.scriptRegistry.register("inventory.deduct", DEDUCT_SCRIPT);
+        this.scriptRegistry.register("inventory.load", LOAD_SCRIPT);
+        this.scriptRegistry.register("inventory.lease", LEASE_SCRIPT);
+        this.scriptRegistry.register("inventory.giveBack", GIVE_BACK_SCRIPT);
+        this.scriptRegistry.register("inventory.trim", TRIM_SCRIPT);
+        if (this.consumer == null || this.consumer.isBlank()) {
+            this.consumer = hostName() + ":" + port;
+        }
+        this.flusher.scheduleWithFixedDelay(this::flush, FLUSH_INTERVAL, FLUSH_INTERVAL, TimeUnit.MILLISECONDS);
+        this.flusher.scheduleWithFixedDelay(this::claimIdle, CLAIM_INTERVAL, CLAIM_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 停止定时回写，并把剩余的变更回写一次
+     */
+    @PreDestroy
+    public void destroy() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(5, TimeUnit.SECONDS);
+        this.flush();
+    }
+
+    /**
+     * 扣减库存，只访问 redis
+     *
+     * @return 扣减成功为true，库存不足为false
+     */
+    public boolean deduct(Long id, int amount) {
+        List<String> keys = List.of(key(id), STREAM_KEY);
+        Object[] args = {String.valueOf(id), String.valueOf(amount)};
+        Long count = this.redisTemplate.execute(DEDUCT_SCRIPT, keys, args);
+        if (count != null && count == -2) {
+            // 库存还没有加载到 redis，从数据库加载后重试一次
+            this.load(id);
+            count = this.redisTemplate.execute(DEDUCT_SCRIPT, keys, args);
+        }
+        return count != null && count >= 0;
+    }
+
+    /**
+     * 一次性从中心库存租出一批库存，租出的部分在数据库中视为已扣减，未用完的通过 {@link #giveBack(Long, long)} 归还
+     *
+     * @param units 希望租出的数量
+     * @return 实际租出的数量，库存不足时小于 units，售罄时为0
+     */
+    public long lease(Long id, long units) {
+        List<String> keys = List.of(key(id), STREAM_KEY);
+        Object[] args = {String.valueOf(id), String.valueOf(units)};
+        Long granted = this.redisTemplate.execute(LEASE_SCRIPT, keys, args);
+        if (granted != null && granted == -2) {
+            this.load(id);
+            granted = this.redisTemplate.execute(LEASE_SCRIPT, keys, args);
+        }
+        return granted == null || granted < 0 ? 0 : granted;
+    }
+
+    /**
+     * 归还租出但没有用完的库存
+     */
+    public void giveBack(Long id, long units) {
+        Long count = this.redisTemplate.execute(GIVE_BACK_SCRIPT, List.of(key(id), STREAM_KEY),
+                String.valueOf(id), String.valueOf(units));
+        if (count != null && count == -2) {
+            System.out.println("归还库存失败，redis 中没有商品 " + id + " 的库存：" + units);
+        }
+    }
+
+    /**
+     * 从数据库加载一个商品的库存，redis 中已存在时不覆盖
+     *
+     * @return 数据库中不存在该商品时返回false
+     */
+    public boolean load(Long id) {
+        Stock stock = this.stockMapper.selectById(id);
+        if (stock == null) {
+            return false;
+        }
+        this.redisTemplate.execute(LOAD_SCRIPT, List.of(key(id)),
+                String.valueOf(stock.getCount()), String.valueOf(stock.getVersion()));
+        return true;
+    }
+
+    /**
+     * 读取流中的变更并回写数据库：先处理本消费者未 ACK 的记录（宕机前或上次回写失败的），再读取新记录，
+     * 有记录回写后裁掉已经 ACK 的记录
+     */
+    void flush() {
+        try {
+            this.ensureGroup();
+            int written = 0;
+            int size;
+            while ((size = this.flushBatch(ReadOffset.from("0"))) > 0) {
+                // 先重放未 ACK 的记录
+                written += size;
+            }
+            do {
+                // 积压较多时连续回写
+                size = this.flushBatch(ReadOffset.lastConsumed());
+                written += size;
+            } while (size == BATCH);
+            if (written > 0) {
+                this.redisTemplate.execute(TRIM_SCRIPT, List.of(STREAM_KEY), GROUP);
+            }
+        } catch (Exception e) {
+            // redis 或数据库暂时不可用，记录保留在流中，下一个周期重试
+            e.printStackTrace();
+        }
+    }
+
+    private int flushBatch(ReadOffset offset) {
+        List<MapRecord<String, Object, Object>> records = this.redisTemplate.opsForStream().read(
+                Consumer.from(GROUP, consumer), StreamReadOptions.empty().count(BATCH),
+                StreamOffset.create(STREAM_KEY, offset));
+        if (records == null || records.isEmpty()) {
+            return 0;
+        }
+        this.writeBack(records, consumer);
+        return records.size();
+    }
+
+    /**
+     * 接管已经停止的消费者未 ACK 的记录
+     * <p>
+     * XCLAIM 时所属消费者保持不变，只刷新空闲时间，多个实例同时接管时只有一个能成功；
+     * 接管的记录按原消费者的回写进度去重，原消费者恢复后重放同样的记录时在进度的行锁上串行，不会重复回写。
+     * 接管到的记录不连续时（部分记录刚被原消费者重新读取）只回写连续的前一部分，其余的留到下次，保证进度不会越过未回写的记录。
+     */
+    void claimIdle() {
+        try {
+            this.ensureGroup();
+            PendingMessages pending = this.redisTemplate.opsForStream().pending(STREAM_KEY, GROUP, Range.unbounded(), BATCH);
+            Map<String, List<RecordId>> idle = new HashMap<>();
+            Set<String> alive = new HashSet<>();
+            for (PendingMessage message : pending) {
+                String owner = message.getConsumerName();
+                if (consumer.equals(owner)) {
+                    continue;
+                }
+                if (message.getElapsedTimeSinceLastDelivery().toMillis() < CLAIM_IDLE) {
+                    alive.add(owner);
+                } else {
+                    idle.computeIfAbsent(owner, k -> new ArrayList<>()).add(message.getId());
+                }
+            }
+            idle.keySet().removeAll(alive);
+            idle.forEach((owner, ids) -> {
+                List<MapRecord<String, Object, Object>> claimed = this.redisTemplate.opsForStream().claim(
+                        STREAM_KEY, GROUP, owner, Duration.ofMillis(CLAIM_IDLE), ids.toArray(new RecordId[0]));
+                int contiguous = 0;
+                while (contiguous < claimed.size() && claimed.get(contiguous).getId().equals(ids.get(contiguous))) {
+                    contiguous++;
+                }
+                if (contiguous > 0) {
+                    System.out.println("接管消费者 " + owner + " 未 ACK 的库存变更：" + contiguous + " 条");
+                    this.writeBack(claimed.subList(0, contiguous), owner);
+                }
+            });
+        } catch (Exception e) {
+            // 下一个周期重试，接管失败的记录仍属于原消费者
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * 按商品分组回写一批记录，然后 ACK
+     *
+     * @param owner 记录所属的消费者，按它的回写进度去重
+     */
+    private void writeBack(List<MapRecord<String, Object, Object>> records, String owner) {
+        // 按商品分组，记录id递增
+        Map<Long, List<MapRecord<String, Object, Object>>> changes = new HashMap<>();
+        for (MapRecord<String, Object, Object> record : records) {
+            Map<Object, Object> change = record.getValue();
+            if (change == null || change.isEmpty()) {
+                // 流只裁掉已经 ACK 的记录，未 ACK 的记录不应被删除，增量已经丢失，只能跳过
+                System.out.println("库存变更记录已被删除，跳过回写：" + record.getId());
+                continue;
+            }
+            changes.computeIfAbsent(Long.valueOf(change.get("id").toString()), k -> new ArrayList<>()).add(record);
+        }
+        changes.forEach((id, list) -> this.writeBack(id, list, owner));
+        RecordId[] ids = records.stream().map(MapRecord::getId).toArray(RecordId[]::new);
+        this.redisTemplate.opsForStream().acknowledge(STREAM_KEY, GROUP, ids);
+    }
+
+    /**
+     * 在一个事务中回写一个商品尚未回写的增量，并推进 owner 的回写进度
+     */
+    private void writeBack(Long id, List<MapRecord<String, Object, Object>> records, String owner) {
+        this.transactionTemplate.executeWithoutResult(status -> {
+            this.writeBackMapper.insertIgnore(id, owner);
+            String lastId = this.writeBackMapper.selectLastIdForUpdate(id, owner);
+            long delta = 0;
+            String newLastId = lastId;
+            for (MapRecord<String, Object, Object> record : records) {
+                String recordId = sortableId(record.getId());
+                if (recordId.compareTo(newLastId) > 0) {
+                    delta += Long.parseLong(record.getValue().get("delta").toString());
+                    newLastId = recordId;
+                }
+            }
+            if (newLastId.equals(lastId)) {
+                // 全部已经回写过
+                return;
+            }
+            if (delta != 0) {
+                this.stockMapper.applyDelta(id, delta);
+            }
+            this.writeBackMapper.updateLastId(id, owner, newLastId);
+        });
+    }
+
+    /**
+     * 消费者组不存在时创建，流不存在时一起创建（MKSTREAM），不需要等到第一次扣减
+     */
+    private void ensureGroup() {
+        if (groupCreated) {
+            return;
+        }
+        try {
+            this.redisTemplate.execute((RedisCallback<String>) connection -> connection.streamCommands()
+                    .xGroupCreate(STREAM_KEY.getBytes(StandardCharsets.UTF_8), GROUP, ReadOffset.from("0"), true));
+        } catch (RuntimeException e) {
+            if (!isBusyGroup(e)) {
+                throw e;
+            }
+            // 消费者组已存在
+        }
+        groupCreated = true;
+    }
+
+    /**
+     * 把流记录id（毫秒时间戳-序号）补零到定长，按字符串比较的顺序与记录顺序一致
+     */
+    static String sortableId(RecordId id) {
+        return String.format("%020d-%020d", id.getTimestamp(), id.getSequence());
+    }
+
+    private static boolean isBusyGroup(Throwable e) {
+        for (Throwable t = e; t != null; t = t.getCause()) {
+            if (t.getMessage() != null && t.getMessage().contains("BUSYGROUP")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    static String key(Long id) {
+        return KEY_PREFIX + id;
+    }
+
+    private static String hostName() {
+        try {
+            return InetAddress.getLocalHost().getHostName();
+        } catch (Exception e) {
+            return "inventory-writer";
+        }
+    }
+}
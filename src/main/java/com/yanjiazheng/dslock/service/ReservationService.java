@@ -0,0 +1,131 @@
+package com.yanjiazheng.dslock.service;
+
+import com.yanjiazheng.dslock.mapper.ReservationMapper;
+import com.yanjiazheng.dslock.mapper.StockMapper;
+import com.yanjiazheng.dslock.pojo.Reservation;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 预留 / 确认 / 取消 三步扣减库存
+ * <p>
+ * 预留时在一个短事务中用条件更新把库存从 db_stock 移出，同时写入一条带过期时间的预留记录（预留的部分）；
+ * 支付等耗时步骤在事务和锁之外进行，期间不阻塞其他买家。确认只修改预留记录的状态，扣减成为永久的；
+ * 取消或过期时把状态改为结束并归还库存。状态转换都带原状态条件，库存只会归还一次。
+ * 清理任务每秒查找已过期的预留并归还库存，多个节点同时清理也是安全的。
+ *
+ * @author hp
+ */
+@Service
+public class ReservationService {
+
+    /**
+     * 每次清理的最大记录数
+     */
+    private static final int SWEEP_BATCH = 100;
+
+    @Autowired
+    private StockMapper stockMapper;
+
+    @Autowired
+    private ReservationMapper reservationMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    private final ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "reservation-sweeper");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        this.sweeper.scheduleWithFixedDelay(this::sweep, 1, 1, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        sweeper.shutdownNow();
+    }
+
+    /**
+     * 预留库存
+     *
+     * @param stockId 库存记录id
+     * @param ttl     预留的有效期，超时未确认自动归还
+     * @return 预留id，库存不足返回null
+     */
+    public String reserve(Long stockId, int amount, long ttl, TimeUnit unit) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("amount must be positive: " + amount);
+        }
+        String id = UUID.randomUUID().toString();
+        Boolean reserved = this.transactionTemplate.execute(status -> {
+            if (this.stockMapper.deductStock(stockId, amount) == 0) {
+                return false;
+            }
+            this.reservationMapper.insert(id, stockId, amount, unit.toMillis(ttl));
+            return true;
+        });
+        return Boolean.TRUE.equals(reserved) ? id : null;
+    }
+
+    /**
+     * 确认预留，扣减成为永久的
+     *
+     * @return 预留不存在、已过期、已取消时返回false
+     */
+    public boolean confirm(String reservationId) {
+        return this.reservationMapper.confirm(reservationId) == 1;
+    }
+
+    /**
+     * 取消预留并归还库存
+     *
+     * @return 预留不存在或已经结束时返回false
+     */
+    public boolean cancel(String reservationId) {
+        return this.release(reservationId, Reservation.CANCELLED);
+    }
+
+    private boolean release(String reservationId, int status) {
+        Boolean released = this.transactionTemplate.execute(tx -> {
+            Reservation reservation = this.reservationMapper.selectById(reservationId);
+            if (reservation == null || this.reservationMapper.release(reservationId, status) == 0) {
+                return false;
+            }
+            this.stockMapper.restoreStock(reservation.getStockId(), reservation.getAmount());
+            return true;
+        });
+        return Boolean.TRUE.equals(released);
+    }
+
+    /**
+     * 归还已过期预留的库存
+     */
+    void sweep() {
+        try {
+            List<Reservation> expired;
+            do {
+                expired = this.reservationMapper.selectExpired(SWEEP_BATCH);
+                for (Reservation reservation : expired) {
+                    if (this.release(reservation.getId(), Reservation.EXPIRED)) {
+                        System.out.println("预留已过期，归还库存：" + reservation.getId());
+                    }
+                }
+            } while (expired.size() == SWEEP_BATCH);
+        } catch (Exception e) {
+            e.printStackTrace();
+        }
+    }
+}
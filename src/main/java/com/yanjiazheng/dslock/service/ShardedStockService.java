@@ -0,0 +1,207 @@
+package com.yanjiazheng.dslock.service;
+
+import com.yanjiazheng.dslock.mapper.StockMapper;
+import com.yanjiazheng.dslock.pojo.DeductResult;
+import com.yanjiazheng.dslock.pojo.Stock;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分段库存：热点商品的库存拆分到同一 product_code 下的多条 db_stock 记录（分段）中
+ * <p>
+ * 每个分段是独立的一行，用 {@link StockMapper#deductStock(Long, int)} 条件扣减，行锁就是分段自己的锁，
+ * 不同分段上的扣减可以并行，单个商品的扣减吞吐量大约是分段数倍。
+ * 请求随机选择一个分段，分段库存不足时依次尝试相邻的分段，并在本地标记为已耗尽，之后的请求直接跳过；
+ * 定时任务在分段之间不均衡时按id顺序锁住全部分段，把总库存重新平均分配，并清除耗尽标记。
+ * 拆分后的商品只能按分段扣减，其他扣减方式在 {@link StockService} 中会被拒绝，预热时也不会再写入 {@code stock:<商品编码>}。
+ *
+ * @author hp
+ */
+@Service
+public class ShardedStockService {
+
+    /**
+     * 重新平衡的间隔（毫秒）
+     */
+    private static final long REBALANCE_INTERVAL = 1000;
+
+    @Autowired
+    private StockMapper stockMapper;
+
+    @Autowired
+    private TransactionTemplate transactionTemplate;
+
+    /**
+     * 本节点使用过的分段商品：商品编码 -> 分段
+     */
+    private final Map<String, Segments> segments = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService rebalancer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "stock-rebalancer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        this.rebalancer.scheduleWithFixedDelay(this::rebalanceAll, REBALANCE_INTERVAL, REBALANCE_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        rebalancer.shutdownNow();
+    }
+
+    /**
+     * 把一个商品的库存拆分为 shards 个分段：分段不足时新增 stock_code 为 {@code <原编码>-<序号>} 的记录，再平均分配总库存
+     * 可以在运行中执行，已有分段不会减少
+     *
+     * @return 实际的分段数
+     */
+    public int split(String productCode, int shards) {
+        if (shards <= 0) {
+            throw new IllegalArgumentException("shards must be positive: " + shards);
+        }
+        Integer size = this.transactionTemplate.execute(status -> {
+            List<Stock> rows = this.stockMapper.selectByProductCodeForUpdate(productCode);
+            if (rows.isEmpty()) {
+                throw new IllegalArgumentException("unknown product: " + productCode);
+            }
+            Stock origin = rows.get(0);
+            String stockCode = origin.getStockCode() == null ? productCode : origin.getStockCode();
+            for (int i = rows.size(); i < shards; i++) {
+                Stock shard = new Stock();
+                shard.setProductCode(productCode);
+                shard.setStockCode(stockCode + "-" + i);
+                shard.setCount(0);
+                shard.setVersion(0L);
+                this.stockMapper.insert(shard);
+                rows.add(shard);
+            }
+            this.redistribute(rows);
+            return rows.size();
+        });
+        this.segments.remove(productCode);
+        return size == null ? 0 : size;
+    }
+
+    /**
+     * 从随机选择的分段扣减库存，不足时转到相邻的分段
+     *
+     * @return 扣减结果，retries 为转到其他分段的次数
+     */
+    public DeductResult deduct(String productCode, int amount) {
+        Segments segs = this.segments(productCode);
+        int size = segs.ids.length;
+        int start = ThreadLocalRandom.current().nextInt(size);
+        int retries = 0;
+        // 第一轮跳过已标记耗尽的分段，全部耗尽时再逐个确认一次，避免标记过期导致少卖
+        for (int round = 0; round < 2; round++) {
+            for (int i = 0; i < size; i++) {
+                int index = (start + i) % size;
+                if (round == 0 && segs.dry[index]) {
+                    continue;
+                }
+                if (this.stockMapper.deductStock(segs.ids[index], amount) == 1) {
+                    return new DeductResult(true, retries);
+                }
+                segs.dry[index] = true;
+                retries++;
+            }
+        }
+        return new DeductResult(false, retries);
+    }
+
+    private Segments segments(String productCode) {
+        return this.segments.computeIfAbsent(productCode, code -> {
+            List<Long> ids = this.stockMapper.selectIdsByProductCode(code);
+            if (ids.isEmpty()) {
+                throw new IllegalArgumentException("unknown product: " + code);
+            }
+            return new Segments(ids.stream().mapToLong(Long::longValue).toArray());
+        });
+    }
+
+    /**
+     * 重新平衡本节点使用过的分段商品，多个节点同时执行时由行锁串行化
+     */
+    private void rebalanceAll() {
+        this.segments.forEach((productCode, segs) -> {
+            try {
+                if (this.rebalance(productCode, segs)) {
+                    // 清除耗尽标记，分段数量也可能被其他节点改变，下次扣减时重新加载
+                    this.segments.remove(productCode, segs);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            }
+        });
+    }
+
+    /**
+     * 本地有分段被标记为耗尽时检查数据库，有分段低于平均值的一半时重新分配
+     *
+     * @return 是否检查过，检查后需要清除本地的耗尽标记
+     */
+    private boolean rebalance(String productCode, Segments segs) {
+        boolean skewed = false;
+        for (boolean dry : segs.dry) {
+            skewed |= dry;
+        }
+        if (!skewed) {
+            return false;
+        }
+        this.transactionTemplate.executeWithoutResult(status -> {
+            List<Stock> rows = this.stockMapper.selectByProductCodeForUpdate(productCode);
+            long total = rows.stream().mapToLong(Stock::getCount).sum();
+            // count < total / size / 2，两边同乘 2 * size，避免整数除法在总库存较少时把阈值截断为0
+            if (total > 0 && rows.stream().anyMatch(row -> (long) row.getCount() * 2 * rows.size() < total)) {
+                this.redistribute(rows);
+            }
+        });
+        return true;
+    }
+
+    /**
+     * 把总库存平均分配到各分段，余数分给前面的分段，调用方已锁住全部分段
+     */
+    private void redistribute(List<Stock> rows) {
+        int total = rows.stream().mapToInt(Stock::getCount).sum();
+        int size = rows.size();
+        for (int i = 0; i < size; i++) {
+            Stock row = rows.get(i);
+            int count = total / size + (i < total % size ? 1 : 0);
+            if (row.getCount() != count) {
+                row.setCount(count);
+                row.setVersion(row.getVersion() + 1);
+                this.stockMapper.updateById(row);
+            }
+        }
+    }
+
+    private static class Segments {
+
+        private final long[] ids;
+
+        /**
+         * 本地的耗尽标记，只是提示，不保证与数据库一致
+         */
+        private final boolean[] dry;
+
+        Segments(long[] ids) {
+            this.ids = ids;
+            this.dry = new boolean[ids.length];
+        }
+    }
+}
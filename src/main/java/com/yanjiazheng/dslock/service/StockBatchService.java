@@ -0,0 +1,140 @@
+package com.yanjiazheng.dslock.service;
+
+import com.yanjiazheng.dslock.mapper.StockMapper;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 批量（组提交）扣减库存
+ * <p>
+ * 同一商品的扣减请求在一个很短的窗口内（或攒够 {@link #MAX_BATCH} 个）合并为一批，
+ * 用一条 {@code update db_stock set count = count - 总数 where id = ? and count >= 总数} 一次性扣减；
+ * 总数不足时退回到按到达顺序逐个条件扣减，能满足的请求仍然成功，其余返回库存不足。
+ * 判断和扣减在同一条语句中完成，由数据库行锁保证不会超卖，整批只需要一次数据库往返，不再需要额外的分布式锁。
+ *
+ * @author hp
+ */
+@Service
+public class StockBatchService {
+
+    /**
+     * 攒批窗口（毫秒）
+     */
+    private static final long WINDOW_MILLIS = 5;
+
+    /**
+     * 每批最多合并的请求数，达到后立即提交
+     */
+    private static final int MAX_BATCH = 100;
+
+    @Autowired
+    private StockMapper stockMapper;
+
+    /**
+     * 正在攒批的批次：商品id -> 批次
+     */
+    private final Map<Long, Batch> batches = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(4, r -> {
+        Thread thread = new Thread(r, "stock-batch");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 提交一个扣减请求
+     *
+     * @param id     商品（库存记录）id
+     * @param amount 扣减数量
+     * @return 扣减成功为true，库存不足为false，在批处理线程上完成
+     */
+    public CompletableFuture<Boolean> deduct(Long id, int amount) {
+        if (amount <= 0) {
+            throw new IllegalArgumentException("amount must be positive: " + amount);
+        }
+        Request request = new Request(amount);
+        batches.compute(id, (k, batch) -> {
+            if (batch == null) {
+                Batch created = new Batch();
+                executor.schedule(() -> flush(k, created), WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+                batch = created;
+            }
+            if (batch.add(request) >= MAX_BATCH) {
+                // 攒够一批，移出后立即提交，后续请求开始新的批次
+                Batch full = batch;
+                executor.execute(() -> flush(k, full));
+                return null;
+            }
+            return batch;
+        });
+        return request.future;
+    }
+
+    private void flush(Long id, Batch batch) {
+        if (!batch.flushed.compareAndSet(false, true)) {
+            return;
+        }
+        // 移出后不会再有请求加入这个批次
+        batches.remove(id, batch);
+        List<Request> requests = batch.drain();
+        try {
+            int total = 0;
+            for (Request request : requests) {
+                total += request.amount;
+            }
+            if (this.stockMapper.deductStock(id, total) == 1) {
+                requests.forEach(request -> request.future.complete(true));
+                return;
+            }
+            // 库存不足以满足整批，按到达顺序逐个扣减
+            for (Request request : requests) {
+                request.future.complete(this.stockMapper.deductStock(id, request.amount) == 1);
+            }
+        } catch (Exception e) {
+            requests.forEach(request -> request.future.completeExceptionally(e));
+        }
+    }
+
+    private static class Batch {
+
+        private final List<Request> requests = new ArrayList<>();
+
+        private final AtomicBoolean flushed = new AtomicBoolean();
+
+        synchronized int add(Request request) {
+            requests.add(request);
+            return requests.size();
+        }
+
+        synchronized List<Request> drain() {
+            return new ArrayList<>(requests);
+        }
+    }
+
+    private static class Request {
+
+        private final int amount;
+
+        private final CompletableFuture<Boolean> future = new CompletableFuture<>();
+
+        Request(int amount) {
+            this.amount = amount;
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.yanjiazheng.dslock.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 节点本地的库存配额
+ * <p>
+ * 热点商品的扣减不再每次访问 redis：本节点一次从 {@link InventoryService} 的中心库存租出一批（初始 {@link #INITIAL_LEASE} 个），
+ * 之后在 JVM 内用 {@link AtomicLong} 的 CAS 扣减，没有任何网络 IO；配额用完时由一个线程续租，其他线程等待续租结果。
+ * 每次续租的数量按本节点最近的消耗速度调整为大约 {@link #TARGET_MILLIS} 毫秒的用量。
+ * 配额在最后一次续租 {@link #LEASE_MILLIS} 毫秒后过期，剩余部分由定时任务归还，应用关闭时也会全部归还。
+ * 租出的库存在中心库存和数据库中都已扣减，节点宕机时未用完的配额不会自动归还，只会少卖不会超卖。
+ *
+ * @author hp
+ */
+@Service
+public class StockQuotaService {
+
+    /**
+     * 第一次租出的数量
+     */
+    private static final long INITIAL_LEASE = 50;
+
+    /**
+     * 每次租出数量的上下限
+     */
+    private static final long MIN_LEASE = 10;
+
+    private static final long MAX_LEASE = 1000;
+
+    /**
+     * 每次租出的数量大约够用的时间（毫秒）
+     */
+    private static final long TARGET_MILLIS = 1000;
+
+    /**
+     * 配额的有效期（毫秒）
+     */
+    private static final long LEASE_MILLIS = 5000;
+
+    /**
+     * 售罄后多久再尝试租出（毫秒），期间直接返回库存不足
+     */
+    private static final long SOLD_OUT_MILLIS = 200;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    private final Map<Long, Quota> quotas = new ConcurrentHashMap<>();
+
+    private final ScheduledExecutorService expirer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "stock-quota-expirer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        this.expirer.scheduleWithFixedDelay(this::expire, 1, 1, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 应用关闭时归还全部剩余配额
+     */
+    @PreDestroy
+    public void destroy() {
+        expirer.shutdownNow();
+        quotas.forEach((id, quota) -> this.giveBack(id, quota));
+    }
+
+    /**
+     * 从本节点的配额中扣减库存，配额不足时向中心库存续租
+     *
+     * @return 扣减成功为true，库存不足为false
+     */
+    public boolean deduct(Long id, int amount) {
+        Quota quota = quotas.computeIfAbsent(id, k -> new Quota());
+        while (true) {
+            if (quota.tryTake(amount)) {
+                return true;
+            }
+            synchronized (quota) {
+                // 其他线程可能已经续租成功
+                if (quota.remaining.get() >= amount) {
+                    continue;
+                }
+                long now = System.currentTimeMillis();
+                if (now < quota.soldOutUntil) {
+                    return false;
+                }
+                long granted = this.inventoryService.lease(id, Math.max(amount, quota.nextLeaseSize(now)));
+                quota.refilled(granted, now);
+                if (quota.remaining.get() < amount) {
+                    // 中心库存也不足，剩余的零头留给数量更小的请求，过期后归还
+                    quota.soldOutUntil = now + SOLD_OUT_MILLIS;
+                    return false;
+                }
+            }
+        }
+    }
+
+    /**
+     * 立即归还一个商品的剩余配额，之后的扣减会重新续租
+     */
+    public void release(Long id) {
+        Quota quota = quotas.get(id);
+        if (quota != null) {
+            synchronized (quota) {
+                this.giveBack(id, quota);
+            }
+        }
+    }
+
+    /**
+     * 本节点当前持有的配额
+     */
+    public long remaining(Long id) {
+        Quota quota = quotas.get(id);
+        return quota == null ? 0 : quota.remaining.get();
+    }
+
+    /**
+     * 归还过期配额的剩余部分
+     */
+    private void expire() {
+        long now = System.currentTimeMillis();
+        quotas.forEach((id, quota) -> {
+            // 与续租互斥，不会归还刚刚续租到的配额
+            synchronized (quota) {
+                if (now >= quota.expireAt && quota.remaining.get() > 0) {
+                    this.giveBack(id, quota);
+                }
+            }
+        });
+    }
+
+    private void giveBack(Long id, Quota quota) {
+        long units = quota.remaining.getAndSet(0);
+        if (units <= 0) {
+            return;
+        }
+        try {
+            this.inventoryService.giveBack(id, units);
+        } catch (Exception e) {
+            // 归还失败时放回本地配额，下一次过期检查时重试
+            quota.remaining.addAndGet(units);
+            e.printStackTrace();
+        }
+    }
+
+    private static class Quota {
+
+        private final AtomicLong remaining = new AtomicLong();
+
+        /**
+         * 上次续租以来扣减的数量
+         */
+        private final AtomicLong consumed = new AtomicLong();
+
+        private long leaseSize = INITIAL_LEASE;
+
+        private long lastRefill;
+
+        private volatile long expireAt;
+
+        private volatile long soldOutUntil;
+
+        boolean tryTake(int amount) {
+            long current;
+            do {
+                current = remaining.get();
+                if (current < amount) {
+                    return false;
+                }
+            } while (!remaining.compareAndSet(current, current - amount));
+            consumed.addAndGet(amount);
+            return true;
+        }
+
+        /**
+         * 按上次续租以来的消耗速度计算本次续租的数量，只在持有 Quota 监视器时调用
+         */
+        long nextLeaseSize(long now) {
+            long elapsed = now - lastRefill;
+            if (lastRefill > 0 && elapsed > 0) {
+                long demand = consumed.getAndSet(0) * TARGET_MILLIS / elapsed;
+                // 与上一次的数量平均，避免抖动
+                leaseSize = Math.max(MIN_LEASE, Math.min(MAX_LEASE, (leaseSize + demand) / 2));
+            }
+            return leaseSize;
+        }
+
+        void refilled(long granted, long now) {
+            remaining.addAndGet(granted);
+            lastRefill = now;
+            expireAt = now + LEASE_MILLIS;
+        }
+    }
+}
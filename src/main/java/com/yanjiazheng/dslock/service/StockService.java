@@ -1,36 +1,108 @@
 package com.yanjiazheng.dslock.service;
 
 import com.baomidou.mybatisplus.core.conditions.update.UpdateWrapper;
+import com.yanjiazheng.dslock.annotations.DistributedLock;
+import com.yanjiazheng.dslock.config.CuratorLockRegistry;
 import com.yanjiazheng.dslock.mapper.LockMapper;
 import com.yanjiazheng.dslock.mapper.StockMapper;
+import com.yanjiazheng.dslock.pojo.DeductResult;
 import com.yanjiazheng.dslock.pojo.Lock;
 import com.yanjiazheng.dslock.pojo.Stock;
 import com.yanjiazheng.dslock.util.DistributedLockClient;
 import com.yanjiazheng.dslock.util.DistributedRedisLock;
+import com.yanjiazheng.dslock.util.FlatCombiner;
+import com.yanjiazheng.dslock.util.HierarchicalLock;
+import com.yanjiazheng.dslock.util.HotKeyTracker;
+import com.yanjiazheng.dslock.util.LockHandle;
+import com.yanjiazheng.dslock.util.LockPubSub;
+import com.yanjiazheng.dslock.util.MysqlLockClient;
+import com.yanjiazheng.dslock.util.RedisReadWriteLock;
+import com.yanjiazheng.dslock.util.RedisScriptRegistry;
 import com.yanjiazheng.dslock.util.ZkClient;
 import com.yanjiazheng.dslock.util.ZkDistributedLock;
-import org.apache.curator.framework.CuratorFramework;
-import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import com.yanjiazheng.dslock.util.ZkReadWriteLock;
+import jakarta.annotation.PostConstruct;
 import org.redisson.api.RLock;
 import org.redisson.api.RedissonClient;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.task.TaskExecutionAutoConfiguration;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.redis.core.RedisOperations;
 import org.springframework.data.redis.core.SessionCallback;
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 
 @Service
 public class StockService {
 
+    /**
+     * 简单分布式锁的解锁脚本：先判断是否自己的锁，再解锁并通知等待者
+     */
+    private static final RedisScript<Boolean> SIMPLE_UNLOCK_SCRIPT = RedisScript.of(
+            "if redis.call('get', KEYS[1]) == ARGV[1] " +
+                    "then " +
+                    "   redis.call('del', KEYS[1]) " +
+                    // 通知等待者锁已释放
+                    "   redis.call('publish', KEYS[2], ARGV[2]) " +
+                    "   return 1 " +
+                    "else " +
+                    "   return 0 " +
+                    "end",
+            Boolean.class
+    );
+
+    /**
+     * 库存充足时扣减库存，返回扣减后的库存，库存不存在或不足返回-1
+     */
+    private static final RedisScript<Long> DEDUCT_SCRIPT = RedisScript.of(
+            "local stock = tonumber(redis.call('get', KEYS[1])) " +
+                    "if stock and stock >= tonumber(ARGV[1]) " +
+                    "then " +
+                    "   return redis.call('decrby', KEYS[1], ARGV[1]) " +
+                    "end " +
+                    "return -1",
+            Long.class
+    );
+
+    /**
+     * 乐观锁冲突后的最大重试次数
+     */
+    private static final int MAX_OPTIMISTIC_RETRIES = 10;
+
+    /**
+     * mysql 锁表加锁冲突后的最大重试次数，退避上限 500 毫秒，最多等待约 6 秒
+     */
+    private static final int MAX_LOCK_RETRIES = 20;
+
+    /**
+     * 乐观锁重试间隔的初始值和上限（毫秒）
+     */
+    private static final long BASE_BACKOFF = 5;
+
+    private static final long MAX_BACKOFF = 100;
+
+    /**
+     * 商品编码缓存的有效期（毫秒），过期后重新确认商品没有被其他节点拆分为分段
+     */
+    private static final long STOCK_ID_TTL = 5000;
+
     @Autowired
     private StockMapper stockMapper;
 
@@ -43,25 +115,172 @@ public class StockService {
     @Autowired
     private DistributedLockClient distributedLockClient;
 
+    @Autowired
+    private LockPubSub lockPubSub;
+
     @Autowired
     private RedissonClient redissonClient;
 
+    /**
+     * 本类的代理，内部调用带切面注解的方法时使用
+     */
+    @Lazy
+    @Autowired
+    private StockService self;
+
+    /**
+     * 业务线程池（spring boot 的 applicationTaskExecutor，开启虚拟线程时每个任务一个虚拟线程），
+     * 异步加锁成功后在这里执行阻塞的库存读写
+     */
+    @Autowired
+    @Qualifier(TaskExecutionAutoConfiguration.APPLICATION_TASK_EXECUTOR_BEAN_NAME)
+    private Executor businessExecutor;
+
     @Autowired
     private ZkClient zkclient;
 
     @Autowired
-    private CuratorFramework curatorFramework;
+    private CuratorLockRegistry curatorLockRegistry;
+
+    @Autowired
+    private MysqlLockClient mysqlLockClient;
+
+    @Autowired
+    private StockBatchService stockBatchService;
+
+    @Autowired
+    private InventoryService inventoryService;
+
+    @Autowired
+    private InventoryLoader inventoryLoader;
+
+    @Autowired
+    private StockQuotaService stockQuotaService;
+
+    @Autowired
+    private ShardedStockService shardedStockService;
+
+    @Autowired
+    private HotKeyTracker hotKeyTracker;
+
+    @Autowired
+    private ReservationService reservationService;
+
+    @Autowired
+    private RedisScriptRegistry scriptRegistry;
+
+    /**
+     * 每个商品一把本地锁，替代 synchronized，虚拟线程在等待 ReentrantLock 时不会钉住载体线程
+     */
+    private final Map<String, ReentrantLock> jvmLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 合并本节点对同一商品的 redisson 临界区，每次持有锁最多执行64个操作
+     */
+    private FlatCombiner redissonCombiner;
+
+    /**
+     * 商品编码 -> 库存记录id，商品可能在运行中被拆分为分段，缓存 STOCK_ID_TTL 毫秒后重新确认
+     */
+    private final Map<String, StockRef> stockIds = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void init() {
+        this.scriptRegistry.register("stock.simpleUnlock", SIMPLE_UNLOCK_SCRIPT);
+        this.scriptRegistry.register("stock.deduct", DEDUCT_SCRIPT);
+        this.redissonCombiner = new FlatCombiner(name -> this.redissonClient.getLock(name), 64);
+        // 热点商品降级后立即归还本节点的剩余配额
+        this.hotKeyTracker.addListener(new HotKeyTracker.Listener() {
+            @Override
+            public void demoted(String key) {
+                String productCode = key.startsWith("stock:") ? key.substring("stock:".length()) : null;
+                StockRef ref = productCode == null ? null : stockIds.get(productCode);
+                if (ref != null) {
+                    stockQuotaService.release(ref.id);
+                }
+            }
+        });
+    }
+
+    /**
+     * 商品（SKU）对应的 redis 库存键
+     */
+    public static String stockKey(String productCode) {
+        return "stock:" + productCode;
+    }
+
+    /**
+     * 商品（SKU）对应的锁名称，不同商品的扣减互不阻塞
+     */
+    static String lockName(String productCode) {
+        return "lock:" + productCode;
+    }
+
+    /**
+     * 按商品编码查找库存记录id，除分段扣减外的扣减方式都只操作这一条记录（或 {@code stock:<商品编码>}）
+     *
+     * @throws IllegalArgumentException 商品不存在，或已经拆分为分段（只能使用分段扣减）
+     */
+    private Long stockId(String productCode) {
+        StockRef ref = this.stockIds.get(productCode);
+        long now = System.currentTimeMillis();
+        if (ref == null || now - ref.checkedAt > STOCK_ID_TTL) {
+            List<Long> ids = this.stockMapper.selectIdsByProductCode(productCode);
+            if (ids.isEmpty()) {
+                throw new IllegalArgumentException("unknown product: " + productCode);
+            }
+            if (ids.size() > 1) {
+                this.stockIds.remove(productCode);
+                throw new IllegalArgumentException("product " + productCode + " is split into " + ids.size() + " segments, use mode=segment");
+            }
+            ref = new StockRef(ids.get(0), now);
+            this.stockIds.put(productCode, ref);
+        }
+        return ref.id;
+    }
 
     /***
-     * 使用synchronized关键字实现加锁
-     * result: 
+     * 使用jvm本地锁实现加锁（原为synchronized，改为ReentrantLock以免钉住虚拟线程）
+     * result: synchronized
      *       10,000 concurrency ： Average 209 ms Throughput 468.9/sec
      *       100,000 concurrency ： Average 2068 ms Throughput 471.2/sec
      */
-    public synchronized void checkAndLockByJvm() {
-        // 先查询库存是否充足
-        Stock stock = this.stockMapper.selectById(1L);
+    public void checkAndLockByJvm(String productCode) {
+        // 先确认商品存在再加锁
+        Long id = this.stockId(productCode);
+        ReentrantLock jvmLock = this.jvmLocks.computeIfAbsent(productCode, k -> new ReentrantLock());
+        jvmLock.lock();
+        try {
+            // 先查询库存是否充足
+            Stock stock = this.stockMapper.selectById(id);
 
+            // 再减库存
+            if (stock != null && stock.getCount() > 0) {
+                stock.setCount(stock.getCount() - 1);
+                this.stockMapper.updateById(stock);
+            }
+        } finally {
+            jvmLock.unlock();
+        }
+    }
+
+    /***
+     * 使用 @DistributedLock 加锁，后端由 dslock.lock 的路由决定，切换后端只需要修改配置
+     */
+    public void deductByRoutedLock(String productCode) {
+        // 先确认商品存在再加锁，不存在的商品编码不会创建任何锁状态
+        Long id = this.stockId(productCode);
+        // 经过代理调用，切面才会加锁
+        this.self.deductWithRoutedLock(id, productCode);
+    }
+
+    /***
+     * 在路由到的锁内扣减，商品已由 deductByRoutedLock 确认存在
+     */
+    @DistributedLock(name = "'lock:' + #productCode")
+    public void deductWithRoutedLock(Long id, String productCode) {
+        // 先查询库存是否充足
+        Stock stock = this.stockMapper.selectById(id);
         // 再减库存
         if (stock != null && stock.getCount() > 0) {
             stock.setCount(stock.getCount() - 1);
@@ -74,10 +293,12 @@ public class StockService {
      * result: 10,000 concurrency ：Average 205 ms Throughput --> 483.7/sec 
      */
     @Transactional
-    public void checkAndLockByTransaction() {
+    public void checkAndLockByTransaction(String productCode) {
+        // 先确认商品存在
+        Long id = this.stockId(productCode);
 
         // 先查询库存是否充足
-        Stock stock = this.stockMapper.selectStockForUpdate(1L);
+        Stock stock = this.stockMapper.selectStockForUpdate(id);
 
         // 再减库存
         if (stock != null && stock.getCount() > 0) {
@@ -87,101 +308,216 @@ public class StockService {
     }
 
     /***
-     * 使用数据库乐观锁实现加锁
-     * result: 10,000 concurrency ：Average 354 ms Throughput --> 261.3/sec
+     * 使用数据库乐观锁实现加锁：版本号冲突后按指数退避（带随机抖动）重试，最多重试 MAX_OPTIMISTIC_RETRIES 次
+     * result: 10,000 concurrency ：Average 354 ms Throughput --> 261.3/sec （原为无退避的递归重试）
      */
-    public void checkAndLockByOptimisticLock() {
-
-        // 先查询库存是否充足
-        Stock stock = this.stockMapper.selectById(1L);
+    public DeductResult checkAndLockByOptimisticLock(String productCode) {
+        // 先确认商品存在
+        Long id = this.stockId(productCode);
+        for (int retries = 0; ; retries++) {
+            // 先查询库存是否充足
+            Stock stock = this.stockMapper.selectById(id);
+            if (stock == null || stock.getCount() <= 0) {
+                return new DeductResult(false, retries);
+            }
 
-        // 再减库存
-        if (stock != null && stock.getCount() > 0) {
             // 获取版本号
             Long version = stock.getVersion();
-
             stock.setCount(stock.getCount() - 1);
             // 每次更新 版本号 + 1
             stock.setVersion(stock.getVersion() + 1);
             // 更新之前先判断是否是之前查询的那个版本，如果不是重试
-            if (this.stockMapper.update(stock, new UpdateWrapper<Stock>().eq("id", stock.getId()).eq("version", version)) == 0) {
-                checkAndLockByOptimisticLock();
+            if (this.stockMapper.update(stock, new UpdateWrapper<Stock>().eq("id", stock.getId()).eq("version", version)) == 1) {
+                return new DeductResult(true, retries);
+            }
+            if (retries >= MAX_OPTIMISTIC_RETRIES || !this.backoff(retries)) {
+                return new DeductResult(false, retries);
             }
         }
     }
 
     /***
-     * 使用redis乐观锁实现加锁
-     * result: 10,000 concurrency ：Average 164 ms Throughput --> 523.9/sec
+     * 使用redis乐观锁实现加锁：WATCH 的 key 被修改后按指数退避（带随机抖动）重试，最多重试 MAX_OPTIMISTIC_RETRIES 次
+     * result: 10,000 concurrency ：Average 164 ms Throughput --> 523.9/sec （原为固定 50ms 间隔的递归重试）
      */
-    public void deductByRedisOptimisticLock() {
-
-        this.redisTemplate.execute(new SessionCallback() {
-            @Override
-            public Object execute(RedisOperations operations) throws DataAccessException {
-                operations.watch("stock");
-                // 1. 查询库存信息
-                Object stock = operations.opsForValue().get("stock");
-                // 2. 判断库存是否充足
-                int st = 0;
-                if (stock != null && (st = Integer.parseInt(stock.toString())) > 0) {
+    public DeductResult deductByRedisOptimisticLock(String productCode) {
+        // stock:<商品编码> 只对应未拆分的商品
+        this.stockId(productCode);
+        for (int retries = 0; ; retries++) {
+            Boolean success = this.redisTemplate.execute(new SessionCallback<Boolean>() {
+                @Override
+                @SuppressWarnings("unchecked")
+                public Boolean execute(RedisOperations operations) throws DataAccessException {
+                    operations.watch(stockKey(productCode));
+                    // 1. 查询库存信息
+                    Object stock = operations.opsForValue().get(stockKey(productCode));
+                    // 2. 判断库存是否充足
+                    int st = 0;
+                    if (stock == null || (st = Integer.parseInt(stock.toString())) <= 0) {
+                        operations.unwatch();
+                        return null;
+                    }
                     // 3. 扣减库存
                     operations.multi();
-                    operations.opsForValue().set("stock", String.valueOf(--st));
+                    operations.opsForValue().set(stockKey(productCode), String.valueOf(--st));
                     List exec = operations.exec();
-                    if (exec == null || exec.isEmpty()) {
-                        try {
-                            Thread.sleep(50);
-                        } catch (InterruptedException e) {
-                            e.printStackTrace();
-                        }
-                        deductByRedisOptimisticLock();
-                    }
-                    return exec;
+                    return exec != null && !exec.isEmpty();
                 }
-                return null;
+            });
+            if (success == null) {
+                // 库存不足
+                return new DeductResult(false, retries);
             }
-        });
+            if (success) {
+                return new DeductResult(true, retries);
+            }
+            if (retries >= MAX_OPTIMISTIC_RETRIES || !this.backoff(retries)) {
+                return new DeductResult(false, retries);
+            }
+        }
+    }
+
+    /**
+     * 乐观锁冲突后等待一段时间再重试，被中断时返回false放弃重试
+     */
+    private boolean backoff(int retries) {
+        long backoff = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(retries, 5));
+        try {
+            Thread.sleep(backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /***
+     * 无锁扣减（mysql）：判断和扣减在同一条条件更新语句中完成，由行锁保证不超卖，不需要重试
+     */
+    public DeductResult deductByConditionalUpdate(String productCode) {
+        return new DeductResult(this.stockMapper.deductStock(this.stockId(productCode), 1) == 1, 0);
+    }
+
+    /***
+     * 常驻 redis 的库存：请求路径上只执行一次 Lua 扣减，变更通过 redis stream 异步回写数据库
+     */
+    public DeductResult deductByRedisInventory(String productCode) {
+        return new DeductResult(this.inventoryService.deduct(this.stockId(productCode), 1), 0);
+    }
+
+    /***
+     * 节点本地配额：从中心库存批量租出，在 JVM 内扣减，请求路径上没有网络 IO
+     */
+    public DeductResult deductByLocalQuota(String productCode) {
+        return new DeductResult(this.stockQuotaService.deduct(this.stockId(productCode), 1), 0);
+    }
+
+    /***
+     * 自适应扣减：普通商品每次在 redis 中扣减（常驻 redis 的库存），
+     * 被热点探测提升后改为节点本地配额，降级后归还配额并恢复为 redis 扣减，两种方式共用同一份中心库存
+     */
+    public DeductResult deductAdaptive(String productCode) {
+        Long id = this.stockId(productCode);
+        if (this.hotKeyTracker.isHot(stockKey(productCode))) {
+            return new DeductResult(this.stockQuotaService.deduct(id, 1), 0);
+        }
+        return new DeductResult(this.inventoryService.deduct(id, 1), 0);
+    }
+
+    /***
+     * 分段库存：随机选择一个分段（独立的库存记录和行锁）扣减，不足时转到相邻分段，retries 为转移次数
+     */
+    public DeductResult deductBySegments(String productCode) {
+        return this.shardedStockService.deduct(productCode, 1);
+    }
+
+    /***
+     * 把商品的库存拆分为多个分段
+     *
+     * @return 实际的分段数
+     */
+    public int splitStock(String productCode, int shards) {
+        int size = this.shardedStockService.split(productCode, shards);
+        // 本节点立即生效，其他节点在缓存过期后生效
+        this.stockIds.remove(productCode);
+        return size;
+    }
+
+    /***
+     * 预留库存：短事务内把库存移到预留记录中，支付期间不持有任何锁，确认或取消见 {@link ReservationService}
+     *
+     * @param ttl 预留的有效期（秒）
+     * @return 预留id，库存不足返回null
+     */
+    public String reserveStock(String productCode, int amount, long ttl) {
+        return this.reservationService.reserve(this.stockId(productCode), amount, ttl, TimeUnit.SECONDS);
+    }
+
+    /***
+     * 把数据库中的库存预热到 redis，已存在的库存不会被覆盖，可以在运行中重复执行
+     *
+     * @return 新写入 redis 的商品数
+     */
+    public long warmUpInventory() {
+        return this.inventoryLoader.load();
+    }
+
+    /***
+     * 无锁扣减（redis）：Lua 脚本中判断库存充足后 DECRBY，单次往返，不需要重试
+     */
+    public DeductResult deductByRedisScript(String productCode) {
+        // stock:<商品编码> 只对应未拆分的商品
+        this.stockId(productCode);
+        Long stock = this.redisTemplate.execute(DEDUCT_SCRIPT, List.of(stockKey(productCode)), "1");
+        return new DeductResult(stock != null && stock >= 0, 0);
     }
 
     /***
      * 使用redis分布式锁实现加锁的一个简单实现
      * result: 10,000 concurrency ：Average 129 ms Throughput --> 511.8/sec
      */
-    public void deductByRedisDistributedLock() {
+    public void deductByRedisDistributedLock(String productCode) {
+        // stock:<商品编码> 只对应未拆分的商品
+        this.stockId(productCode);
         // 生成唯一的value值
         String uuid = UUID.randomUUID().toString();
-        // setnx加锁
-        while (Boolean.FALSE.equals(this.redisTemplate.opsForValue().setIfAbsent("lock", uuid, 3, TimeUnit.SECONDS))) {
-            try {
-                // 休眠50毫秒后再次尝试加锁
-                Thread.sleep(50);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+        // setnx加锁，失败后等待解锁通知再重试，最多等到锁的剩余过期时间
+        String channel = LockPubSub.channel(lockName(productCode));
+        LockPubSub.Entry entry = null;
+        try {
+            while (Boolean.FALSE.equals(this.redisTemplate.opsForValue().setIfAbsent(lockName(productCode), uuid, 3, TimeUnit.SECONDS))) {
+                if (entry == null) {
+                    // 先登记等待再重试一次，避免错过两次尝试之间发布的解锁消息
+                    entry = this.lockPubSub.subscribe(channel);
+                    continue;
+                }
+                Long ttl = this.redisTemplate.getExpire(lockName(productCode), TimeUnit.MILLISECONDS);
+                try {
+                    entry.await(ttl != null && ttl > 0 ? ttl : 50);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        } finally {
+            if (entry != null) {
+                this.lockPubSub.unsubscribe(channel, entry);
             }
         }
         try {
             // 1. 查询库存信息
-            String stock = redisTemplate.opsForValue().get("stock");
+            String stock = redisTemplate.opsForValue().get(stockKey(productCode));
 
             // 2. 判断库存是否充足
             if (stock != null && !stock.isEmpty()) {
                 int st = Integer.parseInt(stock);
                 if (st > 0) {
                     // 3.扣减库存
-                    redisTemplate.opsForValue().set("stock", String.valueOf(--st));
+                    redisTemplate.opsForValue().set(stockKey(productCode), String.valueOf(--st));
                 }
             }
         } finally {
-            // 先判断是否自己的锁，再解锁
-            String script = "if redis.call('get', KEYS[1]) == ARGV[1] " +
-                    "then " +
-                    "   return redis.call('del', KEYS[1]) " +
-                    "else " +
-                    "   return 0 " +
-                    "end";
             // 使用Lua脚本解锁，保证操作的原子性
-            this.redisTemplate.execute(new DefaultRedisScript<>(script, Boolean.class), List.of("lock"), uuid);
+            this.redisTemplate.execute(SIMPLE_UNLOCK_SCRIPT, List.of(lockName(productCode), channel), uuid, LockPubSub.UNLOCK_MESSAGE);
         }
     }
 
@@ -190,20 +526,22 @@ public class StockService {
      *  使用redis实现分布式锁，包括获取锁、可重入、自动续期、解锁
      *  result: 10,000 concurrency ：Average 202 ms Throughput --> 418.8/sec
      */
-    public void deductByRedisLockEncapsulation() {
-        DistributedRedisLock redisLock = this.distributedLockClient.getRedisLock("lock");
+    public void deductByRedisLockEncapsulation(String productCode) {
+        // stock:<商品编码> 只对应未拆分的商品
+        this.stockId(productCode);
+        DistributedRedisLock redisLock = this.distributedLockClient.getRedisLock(lockName(productCode));
         redisLock.lock();
 
         try {
             // 1. 查询库存信息
-            String stock = redisTemplate.opsForValue().get("stock").toString();
+            String stock = redisTemplate.opsForValue().get(stockKey(productCode));
 
             // 2. 判断库存是否充足
             if (stock != null && !stock.isEmpty()) {
                 int st = Integer.parseInt(stock);
                 if (st > 0) {
                     // 3.扣减库存
-                    redisTemplate.opsForValue().set("stock", String.valueOf(--st));
+                    redisTemplate.opsForValue().set(stockKey(productCode), String.valueOf(--st));
                 }
             }
         } finally {
@@ -211,17 +549,122 @@ public class StockService {
         }
     }
 
+    /***
+     *  使用非阻塞的redis分布式锁：等待锁期间不占用任何线程，
+     *  拿到锁后切换到业务线程池执行扣减并释放锁，阻塞的 redis 读写不占用加锁执行器的线程
+     */
+    public CompletableFuture<Void> deductByRedisLockAsync(String productCode) {
+        // stock:<商品编码> 只对应未拆分的商品
+        this.stockId(productCode);
+        return this.distributedLockClient.lockAsync(lockName(productCode)).thenAcceptAsync(handle -> {
+            try {
+                // 1. 查询库存信息
+                String stock = redisTemplate.opsForValue().get(stockKey(productCode));
+
+                // 2. 判断库存是否充足
+                if (stock != null && !stock.isEmpty()) {
+                    int st = Integer.parseInt(stock);
+                    if (st > 0) {
+                        // 3.扣减库存
+                        redisTemplate.opsForValue().set(stockKey(productCode), String.valueOf(--st));
+                    }
+                }
+            } finally {
+                handle.unlock();
+            }
+        }, this.businessExecutor);
+    }
+
+    /***
+     *  批量扣减：并发的扣减请求合并为一条条件更新，整批只有一次数据库往返
+     *
+     * @return 扣减成功为true，库存不足为false
+     */
+    public CompletableFuture<Boolean> deductByBatch(String productCode) {
+        return this.stockBatchService.deduct(this.stockId(productCode), 1);
+    }
+
+    /***
+     *  使用两级锁：本节点线程先在本地公平锁上排队，只有队头线程竞争redis锁，
+     *  本地还有等待者时最多连续交接16次而不释放redis锁
+     */
+    public void deductByHierarchicalLock(String productCode) {
+        // stock:<商品编码> 只对应未拆分的商品
+        this.stockId(productCode);
+        HierarchicalLock lock = this.distributedLockClient.getHierarchicalLock(lockName(productCode), 16);
+        lock.lock();
+
+        try {
+            // 1. 查询库存信息
+            String stock = redisTemplate.opsForValue().get(stockKey(productCode));
+
+            // 2. 判断库存是否充足
+            if (stock != null && !stock.isEmpty()) {
+                int st = Integer.parseInt(stock);
+                if (st > 0) {
+                    // 3.扣减库存
+                    redisTemplate.opsForValue().set(stockKey(productCode), String.valueOf(--st));
+                }
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /***
+     *  使用redis读写锁的读锁查询库存：读者之间共享，查询不再排在扣减后面串行执行
+     */
+    public String queryStockByRedisReadLock(String productCode) {
+        // stock:<商品编码> 只对应未拆分的商品
+        this.stockId(productCode);
+        DistributedRedisLock readLock = this.distributedLockClient.getReadWriteLock(lockName(productCode) + ":rw").readLock();
+        readLock.lock();
+        try {
+            return redisTemplate.opsForValue().get(stockKey(productCode));
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /***
+     *  使用redis读写锁的写锁扣减库存，与读锁互斥
+     */
+    public void deductByRedisWriteLock(String productCode) {
+        // stock:<商品编码> 只对应未拆分的商品
+        this.stockId(productCode);
+        RedisReadWriteLock rwLock = this.distributedLockClient.getReadWriteLock(lockName(productCode) + ":rw");
+        rwLock.writeLock().lock();
+
+        try {
+            // 1. 查询库存信息
+            String stock = redisTemplate.opsForValue().get(stockKey(productCode));
+
+            // 2. 判断库存是否充足
+            if (stock != null && !stock.isEmpty()) {
+                int st = Integer.parseInt(stock);
+                if (st > 0) {
+                    // 3.扣减库存
+                    redisTemplate.opsForValue().set(stockKey(productCode), String.valueOf(--st));
+                }
+            }
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
+
     /***
      * 使用redisson实现分布式锁
      * result: 10,000 concurrency ：Average 308 ms Throughput --> 320.7/sec
      */
-    public void checkAndLockByRedisson() {
+    public void checkAndLockByRedisson(String productCode) {
+        // 先确认商品存在再加锁
+        Long id = this.stockId(productCode);
         // 加锁，获取锁失败重试
-        RLock lock = this.redissonClient.getLock("lock");
+        RLock lock = this.redissonClient.getLock(lockName(productCode));
         lock.lock();
 
         // 先查询库存是否充足
-        Stock stock = this.stockMapper.selectById(1L);
+        Stock stock = this.stockMapper.selectById(id);
         // 再减库存
         if (stock != null && stock.getCount() > 0) {
             stock.setCount(stock.getCount() - 1);
@@ -232,17 +675,38 @@ public class StockService {
         lock.unlock();
     }
 
+    /***
+     *  使用redisson分布式锁并合并本节点的临界区：同一商品只有合并者线程获取一次锁，
+     *  在锁内替所有等待的本地线程执行扣减，其他线程不再各自加锁解锁
+     */
+    public void checkAndLockByRedissonCombined(String productCode) {
+        // 先确认商品存在再加锁
+        Long id = this.stockId(productCode);
+        this.redissonCombiner.execute(lockName(productCode), () -> {
+            // 先查询库存是否充足
+            Stock stock = this.stockMapper.selectById(id);
+            // 再减库存
+            if (stock != null && stock.getCount() > 0) {
+                stock.setCount(stock.getCount() - 1);
+                this.stockMapper.updateById(stock);
+            }
+            return null;
+        });
+    }
+
     /***
      *  使用zookeeper实现分布式锁
      *  result: 10,000 concurrency ：Average 394 ms Throughput --> 251.7/sec
      */
-    public void checkAndLockByZookeeper() {
+    public void checkAndLockByZookeeper(String productCode) {
+        // 先确认商品存在再加锁
+        Long id = this.stockId(productCode);
         // 加锁，获取锁失败重试
-        ZkDistributedLock lock = this.zkclient.getZkDistributedLock("lock");
+        ZkDistributedLock lock = this.zkclient.getZkDistributedLock(lockName(productCode));
         lock.lock();
 
         // 先查询库存是否充足
-        Stock stock = this.stockMapper.selectById(1L);
+        Stock stock = this.stockMapper.selectById(id);
         // 再减库存
         if (stock != null && stock.getCount() > 0) {
             stock.setCount(stock.getCount() - 1);
@@ -254,25 +718,57 @@ public class StockService {
     }
 
     /***
-     *  使用curator实现分布式锁
-     *  result: 10,000 concurrency ：Average 442 ms Throughput --> 224.5/sec
+     *  使用zookeeper读写锁的读锁查询库存，连续的读者互不阻塞
      */
-    public void checkAndLockByCurator() {
-        InterProcessMutex mutex = new InterProcessMutex(curatorFramework, "/curator/lock");
+    public Stock queryStockByZkReadLock(String productCode) {
+        // 先确认商品存在再加锁
+        Long id = this.stockId(productCode);
+        ZkReadWriteLock rwLock = this.zkclient.getReadWriteLock(lockName(productCode));
+        rwLock.readLock().lock();
         try {
-            // 加锁
-            mutex.acquire();
+            return this.stockMapper.selectById(id);
+        } finally {
+            rwLock.readLock().unlock();
+        }
+    }
 
+    /***
+     *  使用zookeeper读写锁的写锁扣减库存，与读锁互斥
+     */
+    public void checkAndLockByZkWriteLock(String productCode) {
+        // 先确认商品存在再加锁
+        Long id = this.stockId(productCode);
+        ZkReadWriteLock rwLock = this.zkclient.getReadWriteLock(lockName(productCode));
+        rwLock.writeLock().lock();
+        try {
             // 先查询库存是否充足
-            Stock stock = this.stockMapper.selectById(1L);
+            Stock stock = this.stockMapper.selectById(id);
             // 再减库存
             if (stock != null && stock.getCount() > 0) {
                 stock.setCount(stock.getCount() - 1);
                 this.stockMapper.updateById(stock);
             }
+        } finally {
+            rwLock.writeLock().unlock();
+        }
+    }
 
-            // 释放锁
-            mutex.release();
+    /***
+     *  使用curator实现分布式锁：同一路径复用注册表中缓存的 InterProcessMutex，
+     *  try-with-resources 保证业务异常时也会释放锁
+     *  result: 10,000 concurrency ：Average 442 ms Throughput --> 224.5/sec （每次请求新建 InterProcessMutex 时）
+     */
+    public void checkAndLockByCurator(String productCode) {
+        // 先确认商品存在再加锁
+        Long id = this.stockId(productCode);
+        try (LockHandle lock = this.curatorLockRegistry.lock("/curator/lock/" + productCode)) {
+            // 先查询库存是否充足
+            Stock stock = this.stockMapper.selectById(id);
+            // 再减库存
+            if (stock != null && stock.getCount() > 0) {
+                stock.setCount(stock.getCount() - 1);
+                this.stockMapper.updateById(stock);
+            }
         } catch (Exception e) {
             e.printStackTrace();
         }
@@ -282,37 +778,104 @@ public class StockService {
      *  使用mysql创建锁表实现分布式锁
      *  result: 10,000 concurrency ：Average 2,298 ms Throughput --> 42.7/sec
      */
-    public void checkAndLockByMySQL() {
+    public void checkAndLockByMySQL(String productCode) {
+        // 先确认商品存在再加锁
+        Long id = this.stockId(productCode);
 
-        // 加锁
+        // 加锁：锁名称唯一键冲突时按指数退避（带随机抖动）重试，最多重试 MAX_LOCK_RETRIES 次；
+        // 其他数据库异常（例如数据库不可用）直接抛出，不重试
         Lock lock = new Lock();
-        lock.setLockName("lock");
+        lock.setLockName(lockName(productCode));
         lock.setClassName(this.getClass().getName());
         lock.setCreateTime(new Date());
-        try {
-            this.lockMapper.insert(lock);
-        } catch (Exception ex) {
-            // 获取锁失败，则重试
+        for (int retries = 0; ; retries++) {
             try {
-                Thread.sleep(50);
-                this.checkAndLockByMySQL();
-            } catch (InterruptedException e) {
-                e.printStackTrace();
+                this.lockMapper.insert(lock);
+                break;
+            } catch (DuplicateKeyException ex) {
+                if (retries >= MAX_LOCK_RETRIES) {
+                    throw new RuntimeException("Lock wait timeout: " + lock.getLockName());
+                }
+                lock.setId(null);
+                try {
+                    Thread.sleep(MysqlLockClient.backoff(retries));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new RuntimeException("Lock wait interrupted: " + lock.getLockName());
+                }
             }
         }
 
-        // 先查询库存是否充足
-        Stock stock = this.stockMapper.selectById(1L);
+        try {
+            // 先查询库存是否充足
+            Stock stock = this.stockMapper.selectById(id);
 
-        // 再减库存
-        if (stock != null && stock.getCount() > 0) {
+            // 再减库存
+            if (stock != null && stock.getCount() > 0) {
 
-            stock.setCount(stock.getCount() - 1);
-            this.stockMapper.updateById(stock);
+                stock.setCount(stock.getCount() - 1);
+                this.stockMapper.updateById(stock);
+            }
+        } finally {
+            // 释放锁
+            this.lockMapper.deleteById(lock.getId());
         }
+    }
 
-        // 释放锁
-        this.lockMapper.deleteById(lock.getId());
+    /***
+     *  使用mysql GET_LOCK 咨询锁：等待在数据库服务端完成，会话断开时自动释放
+     */
+    public void checkAndLockByMySQLAdvisoryLock(String productCode) {
+        // 先确认商品存在再加锁
+        Long id = this.stockId(productCode);
+        java.util.concurrent.locks.Lock lock = this.mysqlLockClient.getAdvisoryLock(lockName(productCode));
+        lock.lock();
+        try {
+            // 先查询库存是否充足
+            Stock stock = this.stockMapper.selectById(id);
+            // 再减库存
+            if (stock != null && stock.getCount() > 0) {
+                stock.setCount(stock.getCount() - 1);
+                this.stockMapper.updateById(stock);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /***
+     *  使用mysql租约表实现分布式锁：锁记录带过期时间并自动续期，节点宕机后锁在租期结束后失效
+     */
+    public void checkAndLockByMySQLLease(String productCode) {
+        // 先确认商品存在再加锁
+        Long id = this.stockId(productCode);
+        java.util.concurrent.locks.Lock lock = this.mysqlLockClient.getLeaseLock(lockName(productCode));
+        lock.lock();
+        try {
+            // 先查询库存是否充足
+            Stock stock = this.stockMapper.selectById(id);
+            // 再减库存
+            if (stock != null && stock.getCount() > 0) {
+                stock.setCount(stock.getCount() - 1);
+                this.stockMapper.updateById(stock);
+            }
+        } finally {
+            lock.unlock();
+        }
     }
 
+    private static final class StockRef {
+
+        private final Long id;
+
+        /**
+         * 最近一次确认商品未拆分的时间
+         */
+        private final long checkedAt;
+
+        private StockRef(Long id, long checkedAt) {
+            this.id = id;
+            this.checkedAt = checkedAt;
+        }
+    }
 }
@@ -0,0 +1,49 @@
+package com.yanjiazheng.dslock.strategy;
+
+import com.yanjiazheng.dslock.util.LockHandle;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 把 {@link Lock} 实现的锁适配为 {@link LockHandle}
+ *
+ * @author hp
+ */
+public abstract class AbstractLockProvider implements LockProvider {
+
+    /**
+     * @param waitTime 等待时间，-1 表示一直等待
+     * @return 获取到的锁，超时返回null
+     */
+    protected LockHandle acquire(String lockName, Lock lock, long waitTime, TimeUnit unit) throws InterruptedException {
+        if (waitTime < 0) {
+            lock.lockInterruptibly();
+        } else if (!lock.tryLock(waitTime, unit)) {
+            return null;
+        }
+        return this.wrap(lockName, lock);
+    }
+
+    /**
+     * 已经获取到的锁，释放时调用 {@link Lock#unlock()}，只能在加锁线程上释放
+     */
+    protected LockHandle wrap(String lockName, Lock lock) {
+        AtomicBoolean released = new AtomicBoolean();
+        return new LockHandle() {
+            @Override
+            public String getName() {
+                return lockName;
+            }
+
+            @Override
+            public void unlock() {
+                if (!released.compareAndSet(false, true)) {
+                    throw new IllegalMonitorStateException("lock already released: " + lockName);
+                }
+                lock.unlock();
+            }
+        };
+    }
+}
@@ -1,5 +1,7 @@
 package com.yanjiazheng.dslock.strategy;
 
+import com.yanjiazheng.dslock.util.RedisScriptRegistry;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.RedisTemplate;
 import org.springframework.data.redis.core.script.RedisScript;
@@ -9,6 +11,19 @@ public abstract class AbstractRateLimiter implements RateLimitStrategy {
     @Autowired
     protected RedisTemplate<String, String> redisTemplate;
 
+    @Autowired
+    protected RedisScriptRegistry scriptRegistry;
+
+    /**
+     * 限流脚本，由子类以常量形式提供，启动时登记到脚本注册中心预加载
+     */
+    protected abstract RedisScript<Long> getScript();
+
+    @PostConstruct
+    public void registerScript() {
+        scriptRegistry.register(getClass().getSimpleName(), getScript());
+    }
+
     protected Long executeScript(RedisScript<Long> script, String key, String... args) {
         return redisTemplate.execute(script, java.util.Collections.singletonList(key), args);
     }
@@ -0,0 +1,29 @@
+package com.yanjiazheng.dslock.strategy;
+
+import com.yanjiazheng.dslock.util.LockHandle;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式锁后端，由 {@link LockProviderFactory} 按锁名称路由
+ *
+ * @author hp
+ */
+public interface LockProvider {
+
+    /**
+     * @return 后端名称，即 application.yml 和 {@code @DistributedLock} 中使用的 backend
+     */
+    String getName();
+
+    /**
+     * 在等待时间内获取锁
+     *
+     * @param lockName  锁名称
+     * @param waitTime  等待时间，-1 表示一直等待
+     * @param leaseTime 固定租期，租期结束后锁自动释放、持有期间不续期（redis / redisson / mysql 支持，其他后端抛出
+     *                  IllegalArgumentException）；-1 表示没有固定租期，支持续期的后端持有期间自动续期
+     * @return 获取到的锁，超时返回null；各后端的互斥锁都与线程绑定，必须在加锁线程上释放
+     */
+    LockHandle tryLock(String lockName, long waitTime, long leaseTime, TimeUnit unit) throws Exception;
+}
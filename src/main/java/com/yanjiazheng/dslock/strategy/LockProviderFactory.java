@@ -0,0 +1,185 @@
+package com.yanjiazheng.dslock.strategy;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.core.env.Environment;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按锁名称选择锁后端
+ * <p>
+ * 查找顺序：redis 中的运行时路由 {@link #ROUTES_KEY} &gt; application.yml 中的 {@code dslock.lock.routes}
+ * &gt; {@code @DistributedLock} 上指定的 backend &gt; {@code dslock.lock.default-backend}。
+ * 路由的键可以是完整的锁名称，也可以是以 '*' 结尾的前缀，多个前缀匹配时最长的优先。
+ * 两级路由每 {@link #REFRESH_SECONDS} 秒重新读取一次，修改后不需要重启；
+ * 指定了固定租期（leaseTime）的锁只能路由到支持租期的后端（redis / redisson / mysql），其他后端加锁时抛出 IllegalArgumentException。
+ * 运行时路由保存在 redis 中，对所有节点生效。
+ * <p>
+ * 注意：切换后端的瞬间，仍持有旧后端锁的请求与使用新后端的请求之间不互斥，
+ * 各节点最多在一个刷新周期后一致，应在流量低时切换。
+ *
+ * @author hp
+ */
+@Component
+public class LockProviderFactory {
+
+    /**
+     * 运行时路由：锁名称（或前缀*） -> 后端名称
+     */
+    public static final String ROUTES_KEY = "dslock:lock:routes";
+
+    private static final long REFRESH_SECONDS = 2;
+
+    @Autowired
+    private List<LockProvider> providerList;
+
+    @Autowired
+    private Environment environment;
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    @Value("${dslock.lock.default-backend:redis}")
+    private String defaultBackend;
+
+    private final Map<String, LockProvider> providers = new HashMap<>();
+
+    private volatile Map<String, String> configured = Map.of();
+
+    private volatile Map<String, String> overrides = Map.of();
+
+    private ScheduledExecutorService refresher;
+
+    @PostConstruct
+    public void init() {
+        for (LockProvider provider : this.providerList) {
+            this.providers.put(provider.getName(), provider);
+        }
+        this.get(this.defaultBackend);
+        // 启动时配置错误直接失败，之后刷新时的错误只打印
+        this.configured = this.bindRoutes();
+        this.configured.values().forEach(this::get);
+        this.refresher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lock-route-refresher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.refresher.scheduleWithFixedDelay(this::refresh, 0, REFRESH_SECONDS, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        this.refresher.shutdownNow();
+    }
+
+    public LockProvider get(String backend) {
+        LockProvider provider = this.providers.get(backend);
+        if (provider == null) {
+            throw new IllegalArgumentException("No lock provider named: " + backend);
+        }
+        return provider;
+    }
+
+    /**
+     * 选择锁名称使用的后端
+     *
+     * @param preferred 代码中指定的后端，为空时使用默认后端
+     */
+    public LockProvider route(String lockName, String preferred) {
+        return this.get(this.backendOf(lockName, preferred));
+    }
+
+    public String backendOf(String lockName, String preferred) {
+        String backend = match(this.overrides, lockName);
+        if (backend == null) {
+            backend = match(this.configured, lockName);
+        }
+        if (backend == null) {
+            backend = preferred == null || preferred.isEmpty() ? this.defaultBackend : preferred;
+        }
+        return backend;
+    }
+
+    /**
+     * 设置运行时路由，所有节点在下一个刷新周期内生效
+     *
+     * @param backend 后端名称，为空时删除该路由
+     */
+    public void setRoute(String name, String backend) {
+        if (backend == null || backend.isEmpty()) {
+            this.redisTemplate.opsForHash().delete(ROUTES_KEY, name);
+        } else {
+            this.get(backend);
+            this.redisTemplate.opsForHash().put(ROUTES_KEY, name, backend);
+        }
+        this.refresh();
+    }
+
+    /**
+     * 当前生效的路由，运行时路由覆盖配置文件中的同名路由
+     */
+    public Map<String, String> routes() {
+        Map<String, String> routes = new TreeMap<>(this.configured);
+        routes.putAll(this.overrides);
+        return routes;
+    }
+
+    private void refresh() {
+        try {
+            this.configured = this.bindRoutes();
+        } catch (Exception e) {
+            System.out.println("读取锁路由配置失败：" + e.getMessage());
+        }
+        try {
+            Map<String, String> fresh = new HashMap<>();
+            this.redisTemplate.opsForHash().entries(ROUTES_KEY).forEach((k, v) -> {
+                if (this.providers.containsKey(v.toString())) {
+                    fresh.put(k.toString(), v.toString());
+                } else {
+                    System.out.println("忽略未知的锁后端：" + k + " -> " + v);
+                }
+            });
+            this.overrides = fresh;
+        } catch (Exception e) {
+            // redis 不可用时保留上一次读取的路由
+            System.out.println("读取运行时锁路由失败：" + e.getMessage());
+        }
+    }
+
+    private Map<String, String> bindRoutes() {
+        return Binder.get(this.environment).bind("dslock.lock.routes", Bindable.mapOf(String.class, String.class))
+                .orElse(Map.of());
+    }
+
+    /**
+     * 完整名称优先，其次是最长的前缀
+     */
+    static String match(Map<String, String> routes, String lockName) {
+        String backend = routes.get(lockName);
+        if (backend != null) {
+            return backend;
+        }
+        int longest = -1;
+        for (Map.Entry<String, String> route : routes.entrySet()) {
+            String key = route.getKey();
+            if (key.endsWith("*") && key.length() > longest && lockName.startsWith(key.substring(0, key.length() - 1))) {
+                longest = key.length();
+                backend = route.getValue();
+            }
+        }
+        return backend;
+    }
+}
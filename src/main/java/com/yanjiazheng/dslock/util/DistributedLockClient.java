@@ -1,10 +1,19 @@
 package com.yanjiazheng.dslock.util;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.redis.core.StringRedisTemplate;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author hp
@@ -15,15 +24,195 @@ public class DistributedLockClient {
     @Autowired
     private StringRedisTemplate redisTemplate;
 
+    @Autowired
+    private LockPubSub pubSub;
+
+    @Autowired
+    private RedisScriptRegistry scriptRegistry;
+
     private String uuid;
 
+    /**
+     * 所有 Redis 锁共享的续期看门狗
+     */
+    private LockWatchdog watchdog;
+
+    /**
+     * 两级锁在本节点上按锁名称共享的排队状态
+     */
+    private final Map<String, HierarchicalLock.Node> localQueues = new ConcurrentHashMap<>();
+
+    /**
+     * 本节点持有中的 Redis 锁及其重入次数，重入和非最后一次解锁不访问 Redis
+     */
+    private final Map<String, DistributedRedisLock.Hold> holds = new ConcurrentHashMap<>();
+
+    /**
+     * 异步加锁的执行器，只用于发起加锁脚本和安排超时重试，等待期间不占用线程
+     */
+    private ScheduledExecutorService asyncExecutor;
+
+    private final AtomicLong asyncSequence = new AtomicLong();
+
+    /**
+     * 信号量许可id的序列号
+     */
+    private final AtomicLong permitSequence = new AtomicLong();
+
     public DistributedLockClient() {
         this.uuid = UUID.randomUUID().toString();
     }
 
+    @PostConstruct
+    public void init() {
+        this.scriptRegistry.register("redisLock.lock", DistributedRedisLock.LOCK_SCRIPT);
+        this.scriptRegistry.register("redisLock.leaseLock", DistributedRedisLock.LEASE_LOCK_SCRIPT);
+        this.scriptRegistry.register("redisLock.unlock", DistributedRedisLock.UNLOCK_SCRIPT);
+        this.scriptRegistry.register("redisLock.renew", LockWatchdog.RENEW_SCRIPT);
+        this.scriptRegistry.register("semaphore.renew", LockWatchdog.RENEW_PERMITS_SCRIPT);
+        this.scriptRegistry.register("redisMultiLock.lock", RedisMultiLock.LOCK_SCRIPT);
+        this.scriptRegistry.register("redisMultiLock.unlock", RedisMultiLock.UNLOCK_SCRIPT);
+        this.scriptRegistry.register("fairLock.lock", FairRedisLock.LOCK_SCRIPT);
+        this.scriptRegistry.register("fairLock.unlock", FairRedisLock.UNLOCK_SCRIPT);
+        this.scriptRegistry.register("fairLock.cancel", FairRedisLock.CANCEL_SCRIPT);
+        this.scriptRegistry.register("readWriteLock.read", RedisReadWriteLock.READ_LOCK_SCRIPT);
+        this.scriptRegistry.register("readWriteLock.write", RedisReadWriteLock.WRITE_LOCK_SCRIPT);
+        this.scriptRegistry.register("readWriteLock.unlock", RedisReadWriteLock.UNLOCK_SCRIPT);
+        this.scriptRegistry.register("readWriteLock.cancelWriteWait", RedisReadWriteLock.CANCEL_WRITE_WAIT_SCRIPT);
+        this.scriptRegistry.register("semaphore.acquire", RedisSemaphore.ACQUIRE_SCRIPT);
+        this.scriptRegistry.register("semaphore.release", RedisSemaphore.RELEASE_SCRIPT);
+        this.watchdog = new LockWatchdog(redisTemplate);
+        this.asyncExecutor = Executors.newScheduledThreadPool(2, r -> {
+            Thread thread = new Thread(r, "lock-async");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (watchdog != null) {
+            watchdog.shutdown();
+        }
+        if (asyncExecutor != null) {
+            asyncExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 获取 Redis 锁，持有者为调用 lock 的线程
+     */
     public DistributedRedisLock getRedisLock(String lockName) {
-        return new DistributedRedisLock(redisTemplate, lockName, uuid);
+        return new DistributedRedisLock(this, lockName, null);
+    }
+
+    /**
+     * 获取公平锁：等待者按到达顺序在 Redis 队列中排队，解锁只唤醒队头
+     */
+    public FairRedisLock getFairLock(String lockName) {
+        return getFairLock(lockName, 5000);
+    }
+
+    /**
+     * 获取公平锁
+     *
+     * @param waitTimeout 等待者超过这个时间（毫秒）没有刷新就被移出队列，用于清理崩溃的等待者
+     */
+    public FairRedisLock getFairLock(String lockName, long waitTimeout) {
+        return new FairRedisLock(this, lockName, waitTimeout);
     }
 
+    /**
+     * 获取读写锁：读者共享，写者独占，读多写少时读请求不再互相串行
+     */
+    public RedisReadWriteLock getReadWriteLock(String lockName) {
+        return new RedisReadWriteLock(this, lockName);
+    }
+
+    /**
+     * 获取分布式信号量，限制整个集群的并发数
+     *
+     * @param permits   许可总数
+     * @param leaseTime 许可的租期，持有期间自动续期，持有者宕机后未归还的许可在租期后回收
+     * @param unit      时间单位
+     */
+    public RedisSemaphore getSemaphore(String name, int permits, long leaseTime, TimeUnit unit) {
+        return new RedisSemaphore(this, name, permits, unit.toMillis(leaseTime));
+    }
+
+    /**
+     * 获取多个锁名称的联锁，一次 Lua 调用全部获取或全部不获取
+     */
+    public RedisMultiLock getMultiLock(String... lockNames) {
+        return new RedisMultiLock(this, lockNames);
+    }
+
+    /**
+     * 非阻塞地获取 Redis 锁，等待期间不占用线程
+     * <p>
+     * 返回的 future 在加锁成功的执行器线程上完成，后续的阻塞操作应使用 *Async 方法切换到业务线程池。
+     * 获取到的锁不可重入，与线程无关，可在任意线程释放；超时可以通过 {@link CompletableFuture#orTimeout} 设置。
+     *
+     * @param lockName  锁名称
+     * @param leaseTime 锁的租期（精确到毫秒），租期结束后锁自动释放、不续期；小于等于0时使用默认过期时间并由看门狗续期
+     * @param unit      时间单位
+     */
+    public CompletableFuture<LockHandle> lockAsync(String lockName, long leaseTime, TimeUnit unit) {
+        String owner = uuid + ":async:" + asyncSequence.incrementAndGet();
+        return new RedisAsyncLock(this, lockName, owner, leaseTime > 0 ? unit.toMillis(leaseTime) : 0).acquire();
+    }
+
+    /**
+     * 非阻塞地获取 Redis 锁，使用默认过期时间，持有期间由看门狗续期
+     */
+    public CompletableFuture<LockHandle> lockAsync(String lockName) {
+        return lockAsync(lockName, -1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取两级锁：本节点的线程先在本地排队，只有队头线程竞争 Redis 锁
+     */
+    public HierarchicalLock getHierarchicalLock(String lockName) {
+        return getHierarchicalLock(lockName, 0);
+    }
+
+    /**
+     * 获取两级锁，并允许节点保留 Redis 锁直接交给本地等待者
+     *
+     * @param maxHandoffs 最大连续交接次数
+     */
+    public HierarchicalLock getHierarchicalLock(String lockName, int maxHandoffs) {
+        // 远程锁由不同线程释放，使用节点级别的持有者标识
+        return new HierarchicalLock(localQueues, lockName,
+                () -> new DistributedRedisLock(this, lockName, uuid + ":node"), maxHandoffs);
+    }
+
+    StringRedisTemplate getRedisTemplate() {
+        return redisTemplate;
+    }
+
+    LockPubSub getPubSub() {
+        return pubSub;
+    }
+
+    LockWatchdog getWatchdog() {
+        return watchdog;
+    }
+
+    Map<String, DistributedRedisLock.Hold> getHolds() {
+        return holds;
+    }
+
+    ScheduledExecutorService getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    AtomicLong getPermitSequence() {
+        return permitSequence;
+    }
+
+    String getUuid() {
+        return uuid;
+    }
 
 }
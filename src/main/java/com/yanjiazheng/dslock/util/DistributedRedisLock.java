@@ -1,11 +1,11 @@
 package com.yanjiazheng.dslock.util;
 
 import org.springframework.data.redis.core.StringRedisTemplate;
-import org.springframework.data.redis.core.script.DefaultRedisScript;
+import org.springframework.data.redis.core.script.RedisScript;
 
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Timer;
-import java.util.TimerTask;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.locks.Condition;
 import java.util.concurrent.locks.Lock;
@@ -16,103 +16,336 @@ import java.util.concurrent.locks.Lock;
  */
 public class DistributedRedisLock implements Lock {
 
-    private StringRedisTemplate redisTemplate;
+    /**
+     * 加锁脚本：获取成功返回nil，否则返回锁的剩余过期时间（毫秒）
+     */
+    public static final RedisScript<Long> LOCK_SCRIPT = RedisScript.of(
+            // 判断锁是否未存在，或者该线程已经持有锁（可重入）
+            "if redis.call('exists', KEYS[1]) == 0 or redis.call('hexists', KEYS[1], ARGV[1]) == 1 " +
+                    "then " +
+                    // 将当前线程的重入次数 +1：
+                    "   redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+                    // 设置锁的过期时间（防止死锁）
+                    "   redis.call('expire', KEYS[1], ARGV[2]) " +
+                    "   return nil " +
+                    "end " +
+                    // 获取失败，返回锁的剩余过期时间，作为等待通知的超时时间
+                    "return redis.call('pttl', KEYS[1])",
+            Long.class
+    );
+
+    /**
+     * 固定租期的加锁脚本：与 {@link #LOCK_SCRIPT} 相同，过期时间 ARGV[2] 以毫秒为单位，不由看门狗续期
+     */
+    public static final RedisScript<Long> LEASE_LOCK_SCRIPT = RedisScript.of(
+            "if redis.call('exists', KEYS[1]) == 0 or redis.call('hexists', KEYS[1], ARGV[1]) == 1 " +
+                    "then " +
+                    "   redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+                    "   redis.call('pexpire', KEYS[1], ARGV[2]) " +
+                    "   return nil " +
+                    "end " +
+                    "return redis.call('pttl', KEYS[1])",
+            Long.class
+    );
+
+    /**
+     * 解锁脚本：锁不属于当前线程返回nil，锁被删除返回1，仍有重入返回0
+     */
+    public static final RedisScript<Long> UNLOCK_SCRIPT = RedisScript.of(
+            "if redis.call('hexists', KEYS[1], ARGV[1]) == 0 " +
+                    "then " +
+                    "   return nil " +
+                    "elseif redis.call('hincrby', KEYS[1], ARGV[1], -1) == 0 " +
+                    "then " +
+                    "   redis.call('del', KEYS[1]) " +
+                    // 通知等待者锁已释放
+                    "   redis.call('publish', KEYS[2], ARGV[2]) " +
+                    "   return 1 " +
+                    "else " +
+                    "   return 0 " +
+                    "end",
+            Long.class
+    );
+
+    protected StringRedisTemplate redisTemplate;
 
-    private String lockName;
+    protected String lockName;
 
     private String uuid;
 
-    private long expire = 30;
+    /**
+     * 固定的持有者标识，为空时持有者为调用 lock 的线程
+     */
+    private String fixedOwner;
+
+    protected LockWatchdog watchdog;
+
+    protected LockPubSub pubSub;
+
+    private Map<String, Hold> holds;
 
-    public DistributedRedisLock(StringRedisTemplate redisTemplate, String lockName, String uuid) {
-        this.redisTemplate = redisTemplate;
+    protected long expire = 30;
+
+    /**
+     * 固定租期（毫秒），大于0时租期结束后锁自动释放，不由看门狗续期
+     */
+    protected long leaseMillis;
+
+    /**
+     * @param client     锁客户端，提供 Redis 连接、续期看门狗、解锁通知和本地重入计数
+     * @param lockName   锁名称
+     * @param fixedOwner 固定的持有者标识（如两级锁使用的节点级标识），为null时使用 客户端uuid:线程id
+     */
+    public DistributedRedisLock(DistributedLockClient client, String lockName, String fixedOwner) {
+        this.redisTemplate = client.getRedisTemplate();
         this.lockName = lockName;
-        this.uuid = uuid + ":" + Thread.currentThread().getId();
+        this.uuid = client.getUuid();
+        this.fixedOwner = fixedOwner;
+        this.watchdog = client.getWatchdog();
+        this.pubSub = client.getPubSub();
+        this.holds = client.getHolds();
     }
 
+    /**
+     * 阻塞直到获取锁，等待期间的中断会在获取锁之后恢复
+     */
     @Override
     public void lock() {
-        this.tryLock();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                this.lockInterruptibly();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Override
     public void lockInterruptibly() throws InterruptedException {
-
+        this.tryLock(-1L, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * 只尝试一次，不等待
+     */
     @Override
     public boolean tryLock() {
-        try {
-            return this.tryLock(-1L, TimeUnit.SECONDS);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
+        String owner = this.owner();
+        if (this.reenter(owner) || this.tryAcquire(owner) == null) {
+            return true;
         }
+        this.cancelWait(owner);
         return false;
     }
 
     /**
      * 尝试获取锁，如果无法立即获取锁，则等待指定的时间
      *
-     * @param time 等待锁的时间，如果为-1，则不设置超时
+     * @param time 等待锁的时间，如果为-1，则一直等待
      * @param unit 时间单位
      * @return 如果获取到锁，则返回true；否则返回false
      * @throws InterruptedException 如果线程被中断
      */
     @Override
     public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
-        //  如果指定了超时时间，则计算锁的过期时间
-        if (time != -1) {
-            this.expire = unit.toSeconds(time);
-        }
-        //  Lua脚本，用于在Redis中执行原子操作来尝试获取锁
-        String script =
-                // 判断锁是否未存在，或者该线程已经持有锁（可重入）
-                "if redis.call('exists', KEYS[1]) == 0 or redis.call('hexists', KEYS[1], ARGV[1]) == 1 " +
-                        "then " +
-                        // 将当前线程的重入次数 +1：
-                        "   redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
-                        // 设置锁的过期时间（防止死锁）
-                        "   redis.call('expire', KEYS[1], ARGV[2]) " +
-                        "   return 1 " +
-                        "else " +
-                        "   return 0 " +
-                        "end";
-        //  循环尝试执行Lua脚本以获取锁，如果未成功则线程休眠50毫秒后再次尝试
-        while (!this.redisTemplate.execute(new DefaultRedisScript<>(script, Boolean.class), Collections.singletonList(lockName), uuid, String.valueOf(expire))) {
-            Thread.sleep(50);
-        }
-        //  定时续期
-        this.renewExpire();
-        return true;
+        // 持有者在加锁时确定，而不是在创建锁对象时
+        String owner = this.owner();
+        if (this.reenter(owner)) {
+            return true;
+        }
+        boolean acquired = false;
+        try {
+            Long ttl = this.tryAcquire(owner);
+            if (ttl == null) {
+                acquired = true;
+                return true;
+            }
+            if (time == 0) {
+                return false;
+            }
+            long deadline = time < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + unit.toMillis(time);
+            // 先登记等待再重试，保证重试失败之后发布的解锁消息不会丢失
+            String channel = this.waitChannel(owner);
+            LockPubSub.Entry entry = this.pubSub.subscribe(channel);
+            try {
+                while (true) {
+                    ttl = this.tryAcquire(owner);
+                    if (ttl == null) {
+                        acquired = true;
+                        return true;
+                    }
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    // 等待解锁通知，最多等到锁的剩余过期时间，届时锁可能已经过期
+                    entry.await(this.waitMillis(ttl, remaining));
+                }
+            } finally {
+                this.pubSub.unsubscribe(channel, entry);
+            }
+        } finally {
+            if (!acquired) {
+                this.cancelWait(owner);
+            }
+        }
+    }
+
+    /**
+     * 指定固定租期后尝试获取锁：租期结束后锁自动释放，持有期间不续期，之后再解锁会抛出 IllegalMonitorStateException
+     * 租期精确到毫秒；子类自己的加锁脚本按秒设置过期时间，租期向上取整到秒
+     *
+     * @param waitTime  等待锁的时间，如果为-1，则一直等待
+     * @param leaseTime 锁的租期，小于等于0时使用默认过期时间并由看门狗续期
+     * @param unit      时间单位
+     */
+    public boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+        if (leaseTime > 0) {
+            this.leaseMillis = unit.toMillis(leaseTime);
+            this.expire = Math.max(1, (this.leaseMillis + 999) / 1000);
+        }
+        return this.tryLock(waitTime, unit);
+    }
+
+    /**
+     * 当前持有者已经持有该锁时只在本地增加重入次数，不访问 Redis
+     * 固定租期已经结束、或看门狗续期失败时本地记录已经失效，丢弃后重新到 Redis 加锁
+     */
+    private boolean reenter(String owner) {
+        String holdKey = this.holdKey(owner);
+        Hold hold = this.holds.get(holdKey);
+        if (hold == null || !hold.isHeldBy(owner)) {
+            return false;
+        }
+        if (hold.isValid()) {
+            hold.count++;
+            return true;
+        }
+        this.holds.remove(holdKey, hold);
+        if (hold.lease != null) {
+            this.watchdog.deregister(hold.lease);
+        }
+        return false;
+    }
+
+    /**
+     * 尝试获取锁，成功后记录本地持有，没有固定租期时交给看门狗续期
+     *
+     * @return 获取成功返回null，否则返回锁的剩余过期时间（毫秒）
+     */
+    private Long tryAcquire(String owner) {
+        // 租期从脚本执行前开始计算，本地记录的租期不会晚于 Redis 中的实际过期时间
+        long start = System.currentTimeMillis();
+        Long ttl = this.acquireOnce(owner);
+        if (ttl == null) {
+            Hold hold = new Hold(owner);
+            if (this.leaseMillis > 0) {
+                hold.deadline = start + this.leaseMillis;
+            } else {
+                //  交给共享看门狗定时续期
+                hold.lease = this.watchdog.register(lockName, owner, expire);
+            }
+            this.holds.put(this.holdKey(owner), hold);
+        }
+        return ttl;
+    }
+
+    /**
+     * 执行一次加锁脚本
+     *
+     * @return 获取成功返回null，否则返回锁的剩余过期时间（毫秒）
+     */
+    protected Long acquireOnce(String owner) {
+        if (this.leaseMillis > 0) {
+            return this.redisTemplate.execute(LEASE_LOCK_SCRIPT, Collections.singletonList(lockName), owner, String.valueOf(leaseMillis));
+        }
+        return this.redisTemplate.execute(LOCK_SCRIPT, Collections.singletonList(lockName), owner, String.valueOf(expire));
+    }
+
+    /**
+     * 执行一次解锁脚本
+     *
+     * @return 锁不属于该持有者返回null，锁被删除返回1，仍有重入返回0
+     */
+    protected Long releaseOnce(String owner) {
+        // 执行Lua脚本，传递锁名称、通知频道和线程标识
+        return this.redisTemplate.execute(UNLOCK_SCRIPT,
+                Arrays.asList(lockName, LockPubSub.channel(lockName)), owner, LockPubSub.UNLOCK_MESSAGE);
+    }
+
+    /**
+     * 本地重入计数的键，同一锁名称同时只有一个持有者时就是锁名称
+     */
+    protected String holdKey(String owner) {
+        return lockName;
+    }
+
+    /**
+     * 等待者监听的解锁通知频道
+     */
+    protected String waitChannel(String owner) {
+        return LockPubSub.channel(lockName);
+    }
+
+    /**
+     * 单次等待解锁通知的最长时间
+     *
+     * @param ttl       锁的剩余过期时间（毫秒）
+     * @param remaining 剩余的等待时间（毫秒）
+     */
+    protected long waitMillis(long ttl, long remaining) {
+        return ttl > 0 ? Math.min(ttl, remaining) : Math.min(50, remaining);
+    }
+
+    /**
+     * 放弃等待（超时或被中断）时调用
+     */
+    protected void cancelWait(String owner) {
+    }
+
+    /**
+     * 持有者标识，同时也是锁在 Redis 哈希中的字段名
+     */
+    protected String owner() {
+        return fixedOwner != null ? fixedOwner : uuid + ":" + Thread.currentThread().getId();
     }
 
     /**
      * 解锁方法
      * <p>
      * 本方法通过执行Lua脚本在Redis中进行解锁操作确保操作的原子性
+     * 重入次数在本地维护，只有最后一次解锁才执行脚本
      * 解锁逻辑如下：
      * 1. 如果锁不存在，则返回nil，表示解锁失败
-     * 2. 如果锁存在，尝试减少锁的计数器如果减少后的计数器为0，则删除锁
+     * 2. 如果锁存在，尝试减少锁的计数器如果减少后的计数器为0，则删除锁并发布解锁消息
      * 3. 如果减少后的计数器不为0，则返回0，表示解锁成功
+     * 4. 锁被删除（返回1）时，从看门狗中注销续期任务
      * <p>
-     * 注意：此方法假设锁是由当前线程持有，且锁的标识通过uuid传递
+     * 注意：此方法假设锁是由当前线程持有，且锁的标识为 客户端uuid:线程id
      *
      * @throws IllegalMonitorStateException 如果锁不属于当前线程时抛出此异常
      */
     @Override
     public void unlock() {
-        // Lua脚本实现了解锁逻辑
-        String script = "if redis.call('hexists', KEYS[1], ARGV[1]) == 0 " +
-                "then " +
-                "   return nil " +
-                "elseif redis.call('hincrby', KEYS[1], ARGV[1], -1) == 0 " +
-                "then " +
-                "   return redis.call('del', KEYS[1]) " +
-                "else " +
-                "   return 0 " +
-                "end";
-        // 执行Lua脚本，传递锁名称和线程标识
-        Long flag = this.redisTemplate.execute(new DefaultRedisScript<>(script, Long.class), Collections.singletonList(lockName), uuid);
+        String owner = this.owner();
+        String holdKey = this.holdKey(owner);
+        Hold hold = this.holds.get(holdKey);
+        if (hold == null || !hold.isHeldBy(owner)) {
+            throw new IllegalMonitorStateException("this lock doesn't belong to you!");
+        }
+        if (--hold.count > 0) {
+            return;
+        }
+        this.holds.remove(holdKey, hold);
+        if (hold.lease != null) {
+            this.watchdog.deregister(hold.lease);
+        }
+        Long flag = this.releaseOnce(owner);
         // 如果脚本执行结果为null，表示锁不属于当前线程，抛出异常
         if (flag == null) {
             throw new IllegalMonitorStateException("this lock doesn't belong to you!");
@@ -125,30 +358,38 @@ public class DistributedRedisLock implements Lock {
     }
 
     /**
-     * 刷新过期时间方法
-     * 该方法用于周期性地刷新一个分布式锁的过期时间，以防止锁过早失效
-     * 它通过在Redis中检查锁是否存在，并在存在时更新其过期时间来实现
-     */
-    private void renewExpire() {
-        // Lua脚本用于在Redis中执行条件逻辑，以原子方式更新锁的过期时间
-        String script = "if redis.call('hexists', KEYS[1], ARGV[1]) == 1 " +
-                "then " +
-                "   return redis.call('expire', KEYS[1], ARGV[2]) " +
-                "else " +
-                "   return 0 " +
-                "end";
-
-        // 使用定时任务定期执行锁的过期时间刷新操作
-        new Timer().schedule(new TimerTask() {
-            @Override
-            public void run() {
-                // 如果锁仍然存在，则执行刷新过期时间的逻辑
-                if (redisTemplate.execute(new DefaultRedisScript<>(script, Boolean.class), Collections.singletonList(lockName), uuid, String.valueOf(expire))) {
-                    // 刷新成功后，重新安排下一次刷新操作
-                    renewExpire();
-                }
-            }
-        }, this.expire * 1000 / 3);
+     * 本地记录的锁持有者和重入次数，count 只由持有者线程修改
+     */
+    static class Hold {
+
+        private final String owner;
+
+        private int count = 1;
+
+        /**
+         * 看门狗续期的租约，固定租期的锁不登记，为null
+         */
+        private LockWatchdog.Lease lease;
+
+        /**
+         * 固定租期的结束时间
+         */
+        private long deadline;
+
+        Hold(String owner) {
+            this.owner = owner;
+        }
+
+        boolean isHeldBy(String owner) {
+            return this.owner.equals(owner);
+        }
+
+        /**
+         * 锁在 Redis 中是否仍然有效：续期中的租约没有丢失，或固定租期还没有结束
+         */
+        boolean isValid() {
+            return lease != null ? lease.isValid() : System.currentTimeMillis() < deadline;
+        }
     }
 
 }
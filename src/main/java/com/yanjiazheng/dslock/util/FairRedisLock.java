@@ -0,0 +1,154 @@
+package com.yanjiazheng.dslock.util;
+
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 公平的 Redis 分布式锁
+ * <p>
+ * 在 Redis 中为每把锁维护一个等待队列（list）和等待者超时表（zset）：
+ * 锁空闲时只有队头等待者能获取，解锁时只通知队头等待者（每个等待者有自己的通知频道）。
+ * 等待者每次尝试都会刷新自己的超时时间，进程崩溃的等待者超时后会被后续的加锁/解锁操作移出队列，
+ * 因此等待者至少每 waitTimeout / 2 醒来一次刷新自己的位置。
+ *
+ * @author hp
+ */
+public class FairRedisLock extends DistributedRedisLock {
+
+    /**
+     * 清理队头超时等待者的公共片段：KEYS[2] 为等待队列，KEYS[3] 为超时表，ARGV[4] 为当前时间（毫秒）
+     */
+    private static final String PURGE_TIMEOUT_WAITERS =
+            "while true do " +
+                    "   local first = redis.call('lindex', KEYS[2], 0) " +
+                    "   if first == false then break end " +
+                    "   local timeout = tonumber(redis.call('zscore', KEYS[3], first)) " +
+                    "   if timeout ~= nil and timeout > tonumber(ARGV[4]) then break end " +
+                    "   redis.call('lpop', KEYS[2]) " +
+                    "   redis.call('zrem', KEYS[3], first) " +
+                    "end ";
+
+    /**
+     * 公平加锁脚本：ARGV[1] 持有者，ARGV[2] 过期时间（秒），ARGV[3] 等待者超时时间（毫秒），ARGV[4] 当前时间（毫秒）
+     * 获取成功返回nil，否则入队（或刷新超时）并返回建议的等待时间（毫秒）
+     */
+    public static final RedisScript<Long> LOCK_SCRIPT = RedisScript.of(
+            PURGE_TIMEOUT_WAITERS +
+                    // 重入
+                    "if redis.call('hexists', KEYS[1], ARGV[1]) == 1 then " +
+                    "   redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+                    "   redis.call('expire', KEYS[1], ARGV[2]) " +
+                    "   return nil " +
+                    "end " +
+                    // 锁空闲，且队列为空或自己是队头
+                    "if redis.call('exists', KEYS[1]) == 0 then " +
+                    "   local first = redis.call('lindex', KEYS[2], 0) " +
+                    "   if first == false or first == ARGV[1] then " +
+                    "       if first == ARGV[1] then redis.call('lpop', KEYS[2]) end " +
+                    "       redis.call('zrem', KEYS[3], ARGV[1]) " +
+                    "       redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+                    "       redis.call('expire', KEYS[1], ARGV[2]) " +
+                    "       return nil " +
+                    "   end " +
+                    "end " +
+                    // 入队，已在队列中则只刷新超时时间
+                    "if redis.call('zscore', KEYS[3], ARGV[1]) == false then " +
+                    "   redis.call('rpush', KEYS[2], ARGV[1]) " +
+                    "end " +
+                    "redis.call('zadd', KEYS[3], tonumber(ARGV[4]) + tonumber(ARGV[3]), ARGV[1]) " +
+                    // 所有等待者都离开后队列自动过期
+                    "redis.call('pexpire', KEYS[2], tonumber(ARGV[3]) * 2) " +
+                    "redis.call('pexpire', KEYS[3], tonumber(ARGV[3]) * 2) " +
+                    "local ttl = redis.call('pttl', KEYS[1]) " +
+                    "if ttl < 0 then return tonumber(ARGV[3]) end " +
+                    "return ttl",
+            Long.class
+    );
+
+    /**
+     * 公平解锁脚本：ARGV[1] 持有者，ARGV[2] 等待者通知频道前缀，ARGV[3] 解锁消息，ARGV[4] 当前时间（毫秒）
+     * 锁不属于该持有者返回nil，锁被删除返回1，仍有重入返回0
+     */
+    public static final RedisScript<Long> UNLOCK_SCRIPT = RedisScript.of(
+            "if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then return nil end " +
+                    "if redis.call('hincrby', KEYS[1], ARGV[1], -1) > 0 then return 0 end " +
+                    "redis.call('del', KEYS[1]) " +
+                    PURGE_TIMEOUT_WAITERS +
+                    // 只唤醒队头等待者
+                    "local next = redis.call('lindex', KEYS[2], 0) " +
+                    "if next ~= false then redis.call('publish', ARGV[2] .. next, ARGV[3]) end " +
+                    "return 1",
+            Long.class
+    );
+
+    /**
+     * 放弃等待：移出队列；如果自己是队头且锁空闲，唤醒下一个等待者
+     * ARGV[1] 持有者，ARGV[2] 等待者通知频道前缀，ARGV[3] 解锁消息，ARGV[4] 当前时间（毫秒）
+     */
+    public static final RedisScript<Long> CANCEL_SCRIPT = RedisScript.of(
+            "local first = redis.call('lindex', KEYS[2], 0) " +
+                    "redis.call('lrem', KEYS[2], 0, ARGV[1]) " +
+                    "redis.call('zrem', KEYS[3], ARGV[1]) " +
+                    "if first == ARGV[1] and redis.call('exists', KEYS[1]) == 0 then " +
+                    PURGE_TIMEOUT_WAITERS +
+                    "   local next = redis.call('lindex', KEYS[2], 0) " +
+                    "   if next ~= false then redis.call('publish', ARGV[2] .. next, ARGV[3]) end " +
+                    "end " +
+                    "return 1",
+            Long.class
+    );
+
+    /**
+     * 等待者在队列中的超时时间（毫秒），超过这个时间没有刷新视为已离开
+     */
+    private final long waitTimeout;
+
+    public FairRedisLock(DistributedLockClient client, String lockName, long waitTimeout) {
+        super(client, lockName, null);
+        this.waitTimeout = waitTimeout;
+    }
+
+    @Override
+    protected Long acquireOnce(String owner) {
+        return this.redisTemplate.execute(LOCK_SCRIPT, keys(), owner, String.valueOf(expire),
+                String.valueOf(waitTimeout), String.valueOf(System.currentTimeMillis()));
+    }
+
+    @Override
+    protected Long releaseOnce(String owner) {
+        return this.redisTemplate.execute(UNLOCK_SCRIPT, keys(), owner, waiterChannelPrefix(),
+                LockPubSub.UNLOCK_MESSAGE, String.valueOf(System.currentTimeMillis()));
+    }
+
+    @Override
+    protected void cancelWait(String owner) {
+        this.redisTemplate.execute(CANCEL_SCRIPT, keys(), owner, waiterChannelPrefix(),
+                LockPubSub.UNLOCK_MESSAGE, String.valueOf(System.currentTimeMillis()));
+    }
+
+    /**
+     * 每个等待者监听自己的频道，解锁时只有队头被唤醒
+     */
+    @Override
+    protected String waitChannel(String owner) {
+        return waiterChannelPrefix() + owner;
+    }
+
+    /**
+     * 在超时时间过半之前醒来刷新自己在队列中的位置
+     */
+    @Override
+    protected long waitMillis(long ttl, long remaining) {
+        return Math.min(super.waitMillis(ttl, remaining), waitTimeout / 2);
+    }
+
+    private List<String> keys() {
+        return Arrays.asList(lockName, lockName + ":queue", lockName + ":timeouts");
+    }
+
+    private String waiterChannelPrefix() {
+        return LockPubSub.channel(lockName) + ":";
+    }
+}
@@ -0,0 +1,193 @@
+package com.yanjiazheng.dslock.util;
+
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * 同一个 key 的临界区合并执行（flat combining）
+ * <p>
+ * 本节点多个线程对同一个 key 执行临界区时，先把操作放入该 key 的队列，抢到合并者身份的线程获取一次分布式锁，
+ * 在锁内依次执行队列中所有线程的操作（每次最多 {@link #maxBatch} 个，之后释放锁，给其他节点机会），
+ * 把结果或异常交给各自的线程；其他线程只在本地等待，不再各自访问锁服务。
+ * 合并者释放锁后如果队列中还有操作，唤醒队头的线程竞争下一轮合并者。
+ * 操作在合并者线程上执行，不能依赖调用线程的 ThreadLocal 状态（例如事务）。
+ *
+ * @author hp
+ */
+public class FlatCombiner {
+
+    /**
+     * 等待者在被唤醒前的最长休眠时间，防止错过唤醒
+     */
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private final Function<String, Lock> lockProvider;
+
+    private final int maxBatch;
+
+    private final Map<String, Slot> slots = new ConcurrentHashMap<>();
+
+    /**
+     * @param lockProvider 根据 key 获取分布式锁，锁由合并者线程获取和释放
+     * @param maxBatch     每次持有锁最多执行的操作数
+     */
+    public FlatCombiner(Function<String, Lock> lockProvider, int maxBatch) {
+        this.lockProvider = lockProvider;
+        this.maxBatch = maxBatch;
+    }
+
+    /**
+     * 在 key 对应的分布式锁内执行操作，返回操作的结果，操作抛出的异常在调用线程上重新抛出
+     */
+    public <T> T execute(String key, Supplier<T> action) {
+        Slot slot = this.ref(key);
+        Op<T> op = new Op<>(action);
+        slot.queue.add(op);
+        try {
+            this.await(key, slot, op);
+        } finally {
+            this.unref(key);
+        }
+        return op.result();
+    }
+
+    private void await(String key, Slot slot, Op<?> op) {
+        boolean interrupted = false;
+        while (!op.done) {
+            if (slot.combining.compareAndSet(false, true)) {
+                try {
+                    this.combine(key, slot);
+                } finally {
+                    slot.combining.set(false);
+                }
+                // 还有未执行的操作时唤醒队头的线程接替合并者
+                Op<?> head = slot.queue.peek();
+                if (head != null && head != op) {
+                    LockSupport.unpark(head.thread);
+                }
+            } else {
+                LockSupport.parkNanos(this, PARK_NANOS);
+                interrupted |= Thread.interrupted();
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private Slot ref(String key) {
+        return slots.compute(key, (k, slot) -> {
+            if (slot == null) {
+                slot = new Slot();
+            }
+            slot.refs++;
+            return slot;
+        });
+    }
+
+    /**
+     * 没有线程在 execute 中时，队列已空且没有合并者，与 ref 在同一个 compute 中判断，移除后不会再有线程使用该 slot
+     */
+    private void unref(String key) {
+        slots.computeIfPresent(key, (k, slot) -> --slot.refs == 0 ? null : slot);
+    }
+
+    private void combine(String key, Slot slot) {
+        Lock lock;
+        try {
+            lock = lockProvider.apply(key);
+            lock.lock();
+        } catch (RuntimeException e) {
+            // 获取锁失败，队列中本轮的操作都以该异常结束，避免它们在调用方放弃之后才被执行
+            for (int i = 0; i < maxBatch; i++) {
+                Op<?> op = slot.queue.poll();
+                if (op == null) {
+                    break;
+                }
+                op.fail(e);
+            }
+            return;
+        }
+        try {
+            for (int i = 0; i < maxBatch; i++) {
+                Op<?> op = slot.queue.poll();
+                if (op == null) {
+                    break;
+                }
+                op.run();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private static class Slot {
+
+        private final Queue<Op<?>> queue = new ConcurrentLinkedQueue<>();
+
+        private final AtomicBoolean combining = new AtomicBoolean();
+
+        /**
+         * 正在 execute 中的线程数，只在 slots 的 compute 中读写
+         */
+        private int refs;
+    }
+
+    private static class Op<T> {
+
+        private final Supplier<T> action;
+
+        private final Thread thread = Thread.currentThread();
+
+        private T value;
+
+        private RuntimeException exception;
+
+        private Error error;
+
+        /**
+         * 写入结果后再置为true，等待线程读到true时一定能看到结果
+         */
+        private volatile boolean done;
+
+        Op(Supplier<T> action) {
+            this.action = action;
+        }
+
+        void run() {
+            try {
+                value = action.get();
+            } catch (RuntimeException e) {
+                exception = e;
+            } catch (Error e) {
+                error = e;
+            }
+            done = true;
+            LockSupport.unpark(thread);
+        }
+
+        void fail(RuntimeException e) {
+            exception = e;
+            done = true;
+            LockSupport.unpark(thread);
+        }
+
+        T result() {
+            if (exception != null) {
+                throw exception;
+            }
+            if (error != null) {
+                throw error;
+            }
+            return value;
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package com.yanjiazheng.dslock.util;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * 两级锁：本地公平锁 + 分布式锁
+ * <p>
+ * 同一个 JVM 内的线程先在按锁名称共享的本地公平锁上排队，只有队头线程才去竞争远程锁（Redis/ZK），
+ * 远程锁的竞争者数量从“线程数”降为“节点数”。
+ * 可选地，释放时如果本地还有等待者，节点保留远程锁并直接交给下一个本地等待者，
+ * 连续交接次数不超过 maxHandoffs，避免其他节点饥饿。
+ * <p>
+ * 开启交接时远程锁会由不同的线程释放，因此远程锁的持有者标识必须是节点级别的。
+ *
+ * @author hp
+ */
+public class HierarchicalLock implements Lock {
+
+    private final Map<String, Node> nodes;
+
+    private final String lockName;
+
+    private final Supplier<Lock> remoteLock;
+
+    private final int maxHandoffs;
+
+    private Node node;
+
+    /**
+     * @param nodes       按锁名称共享的本地排队节点，由创建者持有
+     * @param lockName    锁名称
+     * @param remoteLock  远程锁的创建方法，只有队头线程会调用
+     * @param maxHandoffs 保留远程锁直接交给本地等待者的最大连续次数，0 表示每次都释放远程锁
+     */
+    public HierarchicalLock(Map<String, Node> nodes, String lockName, Supplier<Lock> remoteLock, int maxHandoffs) {
+        this.nodes = nodes;
+        this.lockName = lockName;
+        this.remoteLock = remoteLock;
+        this.maxHandoffs = maxHandoffs;
+    }
+
+    @Override
+    public void lock() {
+        if (reenter()) {
+            return;
+        }
+        Node n = retain();
+        n.local.lock();
+        try {
+            if (n.remote == null) {
+                Lock remote = remoteLock.get();
+                remote.lock();
+                n.remote = remote;
+            }
+        } catch (RuntimeException e) {
+            n.local.unlock();
+            release(n);
+            throw e;
+        }
+        this.node = n;
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        if (!this.tryLock(-1L, TimeUnit.MILLISECONDS)) {
+            throw new IllegalStateException("failed to acquire lock: " + lockName);
+        }
+    }
+
+    @Override
+    public boolean tryLock() {
+        try {
+            return this.tryLock(0L, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 在本地队列和远程锁上一共最多等待 time
+     *
+     * @param time 等待锁的时间，如果为-1，则一直等待
+     */
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (reenter()) {
+            return true;
+        }
+        long deadline = time < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + unit.toMillis(time);
+        Node n = retain();
+        boolean acquired = false;
+        try {
+            if (time < 0) {
+                n.local.lockInterruptibly();
+            } else if (!n.local.tryLock(time, unit)) {
+                return false;
+            }
+            try {
+                if (n.remote == null) {
+                    Lock remote = remoteLock.get();
+                    long remaining = time < 0 ? -1L : Math.max(0, deadline - System.currentTimeMillis());
+                    if (!remote.tryLock(remaining, TimeUnit.MILLISECONDS)) {
+                        return false;
+                    }
+                    n.remote = remote;
+                }
+                acquired = true;
+            } finally {
+                if (!acquired) {
+                    n.local.unlock();
+                }
+            }
+        } finally {
+            if (!acquired) {
+                release(n);
+            }
+        }
+        this.node = n;
+        return true;
+    }
+
+    @Override
+    public void unlock() {
+        Node n = this.node;
+        if (n == null || !n.local.isHeldByCurrentThread()) {
+            throw new IllegalMonitorStateException("this lock doesn't belong to you!");
+        }
+        if (n.local.getHoldCount() > 1) {
+            n.local.unlock();
+            return;
+        }
+        try {
+            if (n.local.hasQueuedThreads() && n.handoffs < maxHandoffs) {
+                // 本地还有等待者，保留远程锁直接交给下一个线程
+                n.handoffs++;
+            } else {
+                n.handoffs = 0;
+                Lock remote = n.remote;
+                n.remote = null;
+                remote.unlock();
+            }
+        } finally {
+            this.node = null;
+            n.local.unlock();
+            release(n);
+        }
+    }
+
+    @Override
+    public Condition newCondition() {
+        return null;
+    }
+
+    private boolean reenter() {
+        if (this.node != null && this.node.local.isHeldByCurrentThread()) {
+            this.node.local.lock();
+            return true;
+        }
+        return false;
+    }
+
+    private Node retain() {
+        return nodes.compute(lockName, (k, n) -> {
+            if (n == null) {
+                n = new Node();
+            }
+            n.refs++;
+            return n;
+        });
+    }
+
+    private void release(Node n) {
+        boolean[] last = {false};
+        nodes.computeIfPresent(lockName, (k, current) -> {
+            if (current != n || --current.refs > 0) {
+                return current;
+            }
+            last[0] = true;
+            return null;
+        });
+        // 交接目标在拿到本地锁之前超时离开时，最后一个离开的线程负责释放远程锁
+        if (last[0] && n.remote != null) {
+            Lock remote = n.remote;
+            n.remote = null;
+            remote.unlock();
+        }
+    }
+
+    /**
+     * 一个锁名称在本节点上的排队状态，remote 和 handoffs 只在持有本地锁时读写
+     */
+    public static class Node {
+
+        private final ReentrantLock local = new ReentrantLock(true);
+
+        private Lock remote;
+
+        private int handoffs;
+
+        private int refs;
+    }
+}
@@ -0,0 +1,190 @@
+package com.yanjiazheng.dslock.util;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 热点 key 探测
+ * <p>
+ * 每个 1 秒的窗口内用 count-min sketch（{@link #DEPTH} 行 x {@link #WIDTH} 列的计数器）估计每个 key 的访问次数，
+ * 内存占用固定，与 key 的数量无关；可以按 1/sample 的概率采样，命中时按 sample 计数。
+ * 估计值超过 {@code dslock.hot-key.threshold}（次/秒）的 key 立即提升为热点，
+ * 之后连续 {@code dslock.hot-key.cool-windows} 个窗口低于阈值的一半时降级。
+ * 提升和降级会通知 {@link Listener}，并记录为 Micrometer 指标：
+ * {@code dslock.hotkey.promotions} / {@code dslock.hotkey.demotions}（按 key 的前缀打 type 标签）和当前热点数 {@code dslock.hotkey.active}。
+ * count-min sketch 只会高估，冲突最多导致冷 key 被误判为热点，不会漏掉真正的热点。
+ *
+ * @author hp
+ */
+@Component
+public class HotKeyTracker {
+
+    private static final int DEPTH = 4;
+
+    private static final int WIDTH = 4096;
+
+    private static final long WINDOW_MILLIS = 1000;
+
+    /**
+     * 每个窗口内访问次数达到该值的 key 被提升为热点
+     */
+    @Value("${dslock.hot-key.threshold:1000}")
+    private long threshold;
+
+    /**
+     * 连续多少个窗口低于阈值的一半后降级
+     */
+    @Value("${dslock.hot-key.cool-windows:5}")
+    private int coolWindows;
+
+    /**
+     * 采样间隔，1 表示记录每一次访问
+     */
+    @Value("${dslock.hot-key.sample:1}")
+    private int sample;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private volatile AtomicLongArray sketch = new AtomicLongArray(DEPTH * WIDTH);
+
+    /**
+     * 当前的热点：key -> 连续低于降级阈值的窗口数
+     */
+    private final Map<String, Integer> hotKeys = new ConcurrentHashMap<>();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "hot-key-tracker");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        this.meterRegistry.gaugeMapSize("dslock.hotkey.active", List.of(), hotKeys);
+        this.scheduler.scheduleAtFixedRate(this::rotate, WINDOW_MILLIS, WINDOW_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        scheduler.shutdownNow();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 记录一次访问
+     */
+    public void record(String key) {
+        if (sample > 1 && ThreadLocalRandom.current().nextInt(sample) != 0) {
+            return;
+        }
+        AtomicLongArray current = this.sketch;
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, current.addAndGet(index(hash, i), sample));
+        }
+        if (estimate >= threshold && !hotKeys.containsKey(key)) {
+            this.promote(key);
+        }
+    }
+
+    public boolean isHot(String key) {
+        return hotKeys.containsKey(key);
+    }
+
+    /**
+     * 切换到新的窗口，并用刚结束的窗口判断热点是否已经冷却
+     */
+    private void rotate() {
+        AtomicLongArray last = this.sketch;
+        this.sketch = new AtomicLongArray(DEPTH * WIDTH);
+        for (String key : hotKeys.keySet()) {
+            if (estimate(last, key) >= threshold / 2) {
+                hotKeys.replace(key, 0);
+            } else if (hotKeys.merge(key, 1, Integer::sum) >= coolWindows) {
+                this.demote(key);
+            }
+        }
+    }
+
+    private void promote(String key) {
+        if (hotKeys.putIfAbsent(key, 0) != null) {
+            return;
+        }
+        System.out.println("热点key提升：" + key);
+        Counter.builder("dslock.hotkey.promotions").tag("type", type(key)).register(meterRegistry).increment();
+        for (Listener listener : listeners) {
+            listener.promoted(key);
+        }
+    }
+
+    private void demote(String key) {
+        if (hotKeys.remove(key) == null) {
+            return;
+        }
+        System.out.println("热点key降级：" + key);
+        Counter.builder("dslock.hotkey.demotions").tag("type", type(key)).register(meterRegistry).increment();
+        for (Listener listener : listeners) {
+            listener.demoted(key);
+        }
+    }
+
+    private static long estimate(AtomicLongArray sketch, String key) {
+        int hash = key.hashCode();
+        long estimate = Long.MAX_VALUE;
+        for (int i = 0; i < DEPTH; i++) {
+            estimate = Math.min(estimate, sketch.get(index(hash, i)));
+        }
+        return estimate;
+    }
+
+    /**
+     * 第 row 行的列下标：用不同的奇数乘子重新打散 hashCode
+     */
+    private static int index(int hash, int row) {
+        int h = hash * (0x9E3779B1 + 2 * row);
+        h ^= h >>> 16;
+        return row * WIDTH + (h & (WIDTH - 1));
+    }
+
+    /**
+     * 指标标签只使用 key 的前缀，避免标签数量随 key 无限增长
+     */
+    private static String type(String key) {
+        int i = key.indexOf(':');
+        return i < 0 ? key : key.substring(0, i);
+    }
+
+    /**
+     * 热点提升和降级的通知，在调用 record 的线程或探测线程上执行
+     */
+    public interface Listener {
+
+        default void promoted(String key) {
+        }
+
+        default void demoted(String key) {
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.yanjiazheng.dslock.util;
+
+/**
+ * 异步获取到的锁
+ * <p>
+ * 与线程无关：可以在任意线程上释放，释放后不能再次使用
+ *
+ * @author hp
+ */
+public interface LockHandle extends AutoCloseable {
+
+    /**
+     * @return 锁名称
+     */
+    String getName();
+
+    /**
+     * 释放锁
+     */
+    void unlock();
+
+    @Override
+    default void close() {
+        unlock();
+    }
+}
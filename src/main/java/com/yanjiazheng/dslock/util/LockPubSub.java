@@ -0,0 +1,164 @@
+package com.yanjiazheng.dslock.util;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.redis.connection.Message;
+import org.springframework.data.redis.connection.MessageListener;
+import org.springframework.data.redis.connection.RedisConnectionFactory;
+import org.springframework.data.redis.listener.PatternTopic;
+import org.springframework.data.redis.listener.RedisMessageListenerContainer;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 锁释放通知
+ * <p>
+ * 解锁时向 {@code dslock:channel:<锁名>} 发布一条消息，本节点只持有一个模式订阅，
+ * 收到消息后唤醒该频道上的一个本地等待者（信号量或回调），等待者被唤醒后再去抢锁，
+ * 从而取代固定间隔的轮询。
+ *
+ * @author hp
+ */
+@Component
+public class LockPubSub implements MessageListener {
+
+    public static final String CHANNEL_PREFIX = "dslock:channel:";
+
+    public static final String UNLOCK_MESSAGE = "0";
+
+    /**
+     * 唤醒频道上的全部等待者，用于读写锁：写锁释放后所有等待的读者都可以同时获取
+     */
+    public static final String WAKE_ALL_MESSAGE = "1";
+
+    @Autowired
+    private RedisConnectionFactory connectionFactory;
+
+    private RedisMessageListenerContainer container;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * 获取锁对应的通知频道
+     */
+    public static String channel(String lockName) {
+        return CHANNEL_PREFIX + lockName;
+    }
+
+    @PostConstruct
+    public void init() {
+        // 整个节点共享一个模式订阅
+        this.container = new RedisMessageListenerContainer();
+        this.container.setConnectionFactory(connectionFactory);
+        this.container.addMessageListener(this, new PatternTopic(CHANNEL_PREFIX + "*"));
+        this.container.afterPropertiesSet();
+        this.container.start();
+    }
+
+    @PreDestroy
+    public void destroy() throws Exception {
+        if (container != null) {
+            container.destroy();
+        }
+    }
+
+    /**
+     * 登记对某个频道的等待，必须与 {@link #unsubscribe(String, Entry)} 成对调用
+     */
+    public Entry subscribe(String channel) {
+        return entries.compute(channel, (k, entry) -> {
+            if (entry == null) {
+                entry = new Entry();
+            }
+            entry.refs++;
+            return entry;
+        });
+    }
+
+    public void unsubscribe(String channel, Entry entry) {
+        entries.computeIfPresent(channel, (k, current) -> {
+            if (current != entry) {
+                return current;
+            }
+            return --current.refs == 0 ? null : current;
+        });
+    }
+
+    @Override
+    public void onMessage(Message message, byte[] pattern) {
+        Entry entry = entries.get(new String(message.getChannel(), StandardCharsets.UTF_8));
+        if (entry == null) {
+            return;
+        }
+        if (WAKE_ALL_MESSAGE.equals(new String(message.getBody(), StandardCharsets.UTF_8))) {
+            entry.signalAll();
+        } else {
+            entry.signal();
+        }
+    }
+
+    /**
+     * 一个频道上的本地等待者：阻塞等待使用信号量，非阻塞等待使用回调
+     */
+    public static class Entry {
+
+        private final Semaphore latch = new Semaphore(0);
+
+        private final Queue<Runnable> listeners = new ConcurrentLinkedQueue<>();
+
+        private volatile int refs;
+
+        /**
+         * 阻塞等待解锁通知
+         *
+         * @param millis 最长等待时间（毫秒）
+         * @return 是否收到通知
+         */
+        public boolean await(long millis) throws InterruptedException {
+            return latch.tryAcquire(millis, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 注册一次性回调，收到下一条通知时执行
+         */
+        public void addListener(Runnable listener) {
+            listeners.add(listener);
+        }
+
+        public boolean removeListener(Runnable listener) {
+            return listeners.remove(listener);
+        }
+
+        /**
+         * 一条解锁消息只唤醒一个等待者，优先执行回调
+         */
+        void signal() {
+            Runnable listener = listeners.poll();
+            if (listener != null) {
+                listener.run();
+            } else {
+                latch.release();
+            }
+        }
+
+        /**
+         * 唤醒全部等待者：执行所有回调，并为每个登记的等待者释放一个许可
+         * 多出的许可只会让等待者多尝试一次，不影响正确性
+         */
+        void signalAll() {
+            Runnable listener;
+            while ((listener = listeners.poll()) != null) {
+                listener.run();
+            }
+            latch.release(Math.max(1, refs));
+        }
+    }
+}
@@ -0,0 +1,340 @@
+package com.yanjiazheng.dslock.util;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 分布式锁的共享看门狗
+ * <p>
+ * 所有持有中的锁租约都登记在一个时间轮（hashed wheel）上，由单个后台线程推进：
+ * 每个 tick 只取出当前槽位中到期的租约，合并成一次批量 Lua 调用统一续期，
+ * 续期失败（锁已不存在或已易主）的租约直接移除。
+ * 租约按锁名称和持有者标识区分，同一线程通过单锁和联锁（{@link RedisMultiLock}）持有同一个 key 时共用一个租约，
+ * 登记和注销按次数计数，最后一次注销时才停止续期。
+ * 登记返回租约本身，持有者重入前用 {@link Lease#isValid()} 确认租约没有丢失、也没有因为 Redis 不可用而过期。
+ * 分布式信号量（{@link RedisSemaphore}）持有中的许可也登记在同一个时间轮上，同一个 tick 中到期的许可用另一个脚本批量续期。
+ * 线程数恒为 1，续期往返次数只与 tick 数相关，不随持有锁的数量增长。
+ *
+ * @author hp
+ */
+public class LockWatchdog {
+
+    /**
+     * 时间轮每格的时长（毫秒）
+     */
+    private static final long TICK_MILLIS = 100;
+
+    /**
+     * 时间轮的槽位数，一圈约 51 秒，超出的延迟通过 rounds 计数
+     */
+    private static final int WHEEL_SIZE = 512;
+
+    /**
+     * 单次批量续期脚本最多携带的租约数，避免单个脚本阻塞 Redis 过久
+     */
+    private static final int MAX_BATCH = 500;
+
+    /**
+     * 批量续期脚本：KEYS[i] 为锁名称，ARGV[2i-1] 为持有者标识，ARGV[2i] 为过期时间（秒）
+     * 返回续期失败的下标列表
+     */
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> RENEW_SCRIPT = RedisScript.of(
+            "local failed = {} " +
+                    "for i, key in ipairs(KEYS) do " +
+                    // 锁仍由该持有者持有时才续期
+                    "   if redis.call('hexists', key, ARGV[2 * i - 1]) == 1 then " +
+                    "       redis.call('expire', key, ARGV[2 * i]) " +
+                    "   else " +
+                    "       table.insert(failed, i) " +
+                    "   end " +
+                    "end " +
+                    "return failed",
+            List.class
+    );
+
+    /**
+     * 许可批量续期脚本：KEYS[i] 为许可集合，ARGV[2i-1] 为许可id，ARGV[2i] 为租期（毫秒）
+     * 许可仍在集合中时把过期时间（分数）更新为 Redis 服务器时间 + 租期，返回续期失败的下标列表
+     */
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> RENEW_PERMITS_SCRIPT = RedisScript.of(
+            "local time = redis.call('time') " +
+                    "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+                    "local failed = {} " +
+                    "for i, key in ipairs(KEYS) do " +
+                    "   local lease = tonumber(ARGV[2 * i]) " +
+                    "   if redis.call('zscore', key, ARGV[2 * i - 1]) then " +
+                    "       redis.call('zadd', key, 'XX', now + lease, ARGV[2 * i - 1]) " +
+                    // 集合的过期时间不短于任何一个许可的租期
+                    "       if redis.call('pttl', key) < lease then " +
+                    "           redis.call('pexpire', key, lease) " +
+                    "       end " +
+                    "   else " +
+                    "       table.insert(failed, i) " +
+                    "   end " +
+                    "end " +
+                    "return failed",
+            List.class
+    );
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final Map<String, Lease> leases = new ConcurrentHashMap<>();
+
+    private final Queue<Lease> pending = new ConcurrentLinkedQueue<>();
+
+    @SuppressWarnings("unchecked")
+    private final List<Lease>[] wheel = new List[WHEEL_SIZE];
+
+    private final ScheduledExecutorService scheduler;
+
+    private long tick;
+
+    public LockWatchdog(StringRedisTemplate redisTemplate) {
+        this.redisTemplate = redisTemplate;
+        for (int i = 0; i < WHEEL_SIZE; i++) {
+            wheel[i] = new ArrayList<>();
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "lock-watchdog");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.scheduler.scheduleAtFixedRate(this::advance, TICK_MILLIS, TICK_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 登记一个需要自动续期的租约，每隔 expire / 3 续期一次
+     * 同一锁名称和持有者已经登记时只增加登记次数，沿用已有租约的过期时间
+     *
+     * @param lockName 锁名称
+     * @param owner    持有者标识
+     * @param expire   过期时间（秒）
+     * @return 登记的租约，与其他登记共用时返回同一个租约
+     */
+    public Lease register(String lockName, String owner, long expire) {
+        return leases.compute(lockName + "@" + owner, (id, lease) -> {
+            if (lease != null && !lease.cancelled) {
+                lease.refs++;
+                return lease;
+            }
+            Lease fresh = new Lease(lockName, owner, expire * 1000, false);
+            pending.add(fresh);
+            return fresh;
+        });
+    }
+
+    /**
+     * 登记一个持有中的信号量许可，每隔 leaseMillis / 3 续期一次，释放许可前调用 {@link #deregister(Lease)}
+     *
+     * @param key         许可集合
+     * @param permitId    许可id
+     * @param leaseMillis 许可的租期（毫秒）
+     */
+    public Lease registerPermit(String key, String permitId, long leaseMillis) {
+        Lease lease = new Lease(key, permitId, leaseMillis, true);
+        leases.put(lease.id(), lease);
+        pending.add(lease);
+        return lease;
+    }
+
+    /**
+     * 注销一次登记，锁彻底释放时调用，登记次数归零后停止续期
+     */
+    public void deregister(String lockName, String owner) {
+        leases.computeIfPresent(lockName + "@" + owner, (id, lease) -> {
+            if (--lease.refs > 0) {
+                return lease;
+            }
+            lease.cancelled = true;
+            return null;
+        });
+    }
+
+    /**
+     * 注销一次登记，只在登记的租约仍是当前租约时生效，租约丢失后同一持有者重新登记的租约不受影响
+     */
+    public void deregister(Lease registered) {
+        leases.computeIfPresent(registered.id(), (id, lease) -> {
+            if (lease != registered || --lease.refs > 0) {
+                return lease;
+            }
+            lease.cancelled = true;
+            return null;
+        });
+    }
+
+    public int size() {
+        return leases.size();
+    }
+
+    public void shutdown() {
+        scheduler.shutdownNow();
+        leases.clear();
+    }
+
+    /**
+     * 推进时间轮一格：把新登记的租约放入槽位，然后续期当前槽位中到期的租约
+     */
+    private void advance() {
+        try {
+            Lease lease;
+            while ((lease = pending.poll()) != null) {
+                schedule(lease);
+            }
+
+            // 取出当前槽位中本圈到期的租约，未到期的留在原槽位等待下一圈
+            List<Lease> expired = new ArrayList<>();
+            Iterator<Lease> iterator = wheel[(int) (tick % WHEEL_SIZE)].iterator();
+            while (iterator.hasNext()) {
+                Lease l = iterator.next();
+                if (l.cancelled) {
+                    iterator.remove();
+                } else if (l.rounds > 0) {
+                    l.rounds--;
+                } else {
+                    iterator.remove();
+                    expired.add(l);
+                }
+            }
+            tick++;
+
+            for (int from = 0; from < expired.size(); from += MAX_BATCH) {
+                renew(expired.subList(from, Math.min(from + MAX_BATCH, expired.size())));
+            }
+        } catch (Throwable e) {
+            e.printStackTrace();
+        }
+    }
+
+    private void schedule(Lease lease) {
+        if (lease.cancelled) {
+            return;
+        }
+        long ticks = Math.max(1, lease.expireMillis / 3 / TICK_MILLIS);
+        lease.rounds = ticks / WHEEL_SIZE;
+        wheel[(int) ((tick + ticks) % WHEEL_SIZE)].add(lease);
+    }
+
+    /**
+     * 锁和许可各使用一次 Lua 调用批量续期
+     */
+    private void renew(List<Lease> batch) {
+        List<Lease> locks = new ArrayList<>(batch.size());
+        List<Lease> permits = new ArrayList<>();
+        for (Lease lease : batch) {
+            (lease.permit ? permits : locks).add(lease);
+        }
+        if (!locks.isEmpty()) {
+            renew(RENEW_SCRIPT, locks);
+        }
+        if (!permits.isEmpty()) {
+            renew(RENEW_PERMITS_SCRIPT, permits);
+        }
+    }
+
+    @SuppressWarnings("rawtypes")
+    private void renew(RedisScript<List> script, List<Lease> batch) {
+        List<String> keys = new ArrayList<>(batch.size());
+        String[] args = new String[batch.size() * 2];
+        for (int i = 0; i < batch.size(); i++) {
+            Lease lease = batch.get(i);
+            keys.add(lease.lockName);
+            args[2 * i] = lease.owner;
+            // 锁的过期时间以秒为单位，许可的租期以毫秒为单位
+            args[2 * i + 1] = String.valueOf(lease.permit ? lease.expireMillis : lease.expireMillis / 1000);
+        }
+        // 续期从脚本执行前开始计算，本地记录的过期时间不会晚于 Redis 中的实际过期时间
+        long start = System.currentTimeMillis();
+        try {
+            List<?> failed = redisTemplate.execute(script, keys, (Object[]) args);
+            if (failed != null) {
+                for (Object index : failed) {
+                    Lease lease = batch.get(((Number) index).intValue() - 1);
+                    // 锁（或许可）已不存在，不再续期
+                    lease.lost = true;
+                    lease.cancelled = true;
+                    leases.remove(lease.id(), lease);
+                }
+            }
+            for (Lease lease : batch) {
+                if (!lease.lost) {
+                    lease.expiresAt = start + lease.expireMillis;
+                }
+            }
+        } catch (Exception e) {
+            // Redis 暂时不可用时保留租约，下一个周期继续尝试
+            e.printStackTrace();
+        }
+        for (Lease lease : batch) {
+            schedule(lease);
+        }
+    }
+
+    /**
+     * 一个锁名称和持有者（或信号量和许可id）的续期租约
+     */
+    public static class Lease {
+
+        private final String lockName;
+
+        private final String owner;
+
+        private final long expireMillis;
+
+        /**
+         * 是否为信号量许可
+         */
+        private final boolean permit;
+
+        private volatile boolean cancelled;
+
+        /**
+         * 续期时发现锁已不存在或已易主
+         */
+        private volatile boolean lost;
+
+        /**
+         * 最近一次成功续期（或登记）后锁在 Redis 中的过期时间
+         */
+        private volatile long expiresAt;
+
+        private long rounds;
+
+        /**
+         * 登记次数，只在 leases 的 compute 中修改
+         */
+        private int refs = 1;
+
+        Lease(String lockName, String owner, long expireMillis, boolean permit) {
+            this.lockName = lockName;
+            this.owner = owner;
+            this.expireMillis = expireMillis;
+            this.permit = permit;
+            this.expiresAt = System.currentTimeMillis() + expireMillis;
+        }
+
+        String id() {
+            return lockName + "@" + owner;
+        }
+
+        /**
+         * 租约没有丢失，并且在本地记录的过期时间之前
+         */
+        public boolean isValid() {
+            return !lost && System.currentTimeMillis() < expiresAt;
+        }
+    }
+}
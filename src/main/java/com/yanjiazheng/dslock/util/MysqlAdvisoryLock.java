@@ -0,0 +1,185 @@
+package com.yanjiazheng.dslock.util;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 基于 mysql GET_LOCK / RELEASE_LOCK 的咨询锁
+ * <p>
+ * 等待在数据库服务端完成，不需要客户端轮询；锁绑定在数据库会话上，会话断开（节点宕机）时由 mysql 自动释放。
+ * 因此持有期间（包括等待期间）需要独占一个连接，而锁内的业务 SQL 还要从连接池再取一个连接：
+ * 如果等待者占满了连接池，持有者拿不到连接，所有线程都会卡到连接池超时。
+ * 所以同时等待和持有咨询锁的线程数由 {@link MysqlLockClient} 的许可数限制，许可数必须小于连接池大小，
+ * 拿不到许可的线程在本地排队，不占用连接。
+ * 锁与线程绑定，重入次数按锁名称记录在线程上；JDBC 调用不能被中断，lockInterruptibly 等同于 lock。
+ *
+ * @author hp
+ */
+public class MysqlAdvisoryLock implements Lock {
+
+    /**
+     * 当前线程持有的咨询锁：锁名称 -> 连接和重入次数
+     */
+    private static final ThreadLocal<Map<String, Hold>> THREAD_LOCAL = ThreadLocal.withInitial(HashMap::new);
+
+    private final DataSource dataSource;
+
+    /**
+     * 占用连接的许可，所有锁名称共享
+     */
+    private final Semaphore permits;
+
+    private final String lockName;
+
+    public MysqlAdvisoryLock(DataSource dataSource, Semaphore permits, String lockName) {
+        this.dataSource = dataSource;
+        this.permits = permits;
+        this.lockName = lockName;
+    }
+
+    @Override
+    public void lock() {
+        this.tryLock(-1L, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void lockInterruptibly() {
+        this.lock();
+    }
+
+    @Override
+    public boolean tryLock() {
+        return this.tryLock(0L, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在等待时间内获取锁
+     *
+     * @param time 等待锁的时间（包括等待许可的时间），如果为-1，则一直等待；GET_LOCK 的超时以秒为单位，不足一秒向上取整
+     */
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) {
+        Hold hold = THREAD_LOCAL.get().get(lockName);
+        if (hold != null) {
+            hold.count++;
+            return true;
+        }
+        long deadline = System.currentTimeMillis() + unit.toMillis(Math.max(time, 0));
+        if (!this.acquirePermit(time, unit)) {
+            return false;
+        }
+        long timeout = time < 0 ? -1 : (Math.max(0, deadline - System.currentTimeMillis()) + 999) / 1000;
+        Connection connection = null;
+        try {
+            connection = dataSource.getConnection();
+            if (this.execute(connection, "select get_lock(?, ?)", timeout)) {
+                THREAD_LOCAL.get().put(lockName, new Hold(connection));
+                return true;
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("failed to acquire mysql lock: " + lockName, e);
+        } finally {
+            // 获取失败时归还连接和许可
+            if (THREAD_LOCAL.get().get(lockName) == null) {
+                if (connection != null) {
+                    this.close(connection);
+                }
+                permits.release();
+            }
+        }
+        return false;
+    }
+
+    /**
+     * JDBC 调用不能被中断，等待许可时的中断也只在获取之后恢复
+     */
+    private boolean acquirePermit(long time, TimeUnit unit) {
+        if (time < 0) {
+            permits.acquireUninterruptibly();
+            return true;
+        }
+        try {
+            return permits.tryAcquire(time, unit);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    @Override
+    public void unlock() {
+        Map<String, Hold> holds = THREAD_LOCAL.get();
+        Hold hold = holds.get(lockName);
+        if (hold == null) {
+            throw new IllegalMonitorStateException("this lock doesn't belong to you!");
+        }
+        if (--hold.count > 0) {
+            return;
+        }
+        holds.remove(lockName);
+        if (holds.isEmpty()) {
+            THREAD_LOCAL.remove();
+        }
+        try {
+            if (!this.execute(hold.connection, "select release_lock(?)", null)) {
+                throw new IllegalMonitorStateException("this lock doesn't belong to you!");
+            }
+        } catch (SQLException e) {
+            throw new IllegalStateException("failed to release mysql lock: " + lockName, e);
+        } finally {
+            this.close(hold.connection);
+            permits.release();
+        }
+    }
+
+    /**
+     * 执行 GET_LOCK / RELEASE_LOCK，返回1表示成功，0或NULL表示失败
+     */
+    private boolean execute(Connection connection, String sql, Long timeout) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, lockName);
+            if (timeout != null) {
+                statement.setLong(2, timeout);
+            }
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() && resultSet.getInt(1) == 1;
+            }
+        }
+    }
+
+    private void close(Connection connection) {
+        try {
+            connection.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public Condition newCondition() {
+        return null;
+    }
+
+    /**
+     * 线程持有锁的连接和重入次数
+     */
+    private static class Hold {
+
+        private final Connection connection;
+
+        private int count = 1;
+
+        Hold(Connection connection) {
+            this.connection = connection;
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package com.yanjiazheng.dslock.util;
+
+import com.yanjiazheng.dslock.mapper.LockLeaseMapper;
+
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 基于租约表（tb_lock_lease）的 mysql 分布式锁
+ * <p>
+ * 一条 INSERT ... ON DUPLICATE KEY UPDATE 在锁不存在或已过期时写入自己的持有者标识和过期时间，
+ * 再查询持有者判断是否获取成功；持有期间每 1/3 租期续期一次，节点宕机后锁最多在一个租期后可以被其他节点获取。
+ * 不自动续期时租期结束后锁即失效，之后再解锁会抛出 IllegalMonitorStateException。
+ * 获取失败时按指数退避（带随机抖动）循环重试，tryLock 的重试受等待时间限制，不会递归。
+ * 持有者标识与 Redis 锁相同（客户端uuid:线程id），重入次数在本地记录；
+ * 租期已经结束或续期失败后本地记录失效，重入时重新到数据库加锁。
+ *
+ * @author hp
+ */
+public class MysqlLeaseLock implements Lock {
+
+    private final LockLeaseMapper leaseMapper;
+
+    private final ScheduledExecutorService scheduler;
+
+    private final Map<String, Hold> holds;
+
+    private final String uuid;
+
+    private final String lockName;
+
+    private final long leaseMillis;
+
+    /**
+     * 为false时租期结束后锁自动失效，持有期间不续期
+     */
+    private final boolean autoRenew;
+
+    MysqlLeaseLock(MysqlLockClient client, String lockName, long leaseMillis, boolean autoRenew) {
+        this.leaseMapper = client.getLeaseMapper();
+        this.scheduler = client.getExecutor();
+        this.holds = client.getHolds();
+        this.uuid = client.getUuid();
+        this.lockName = lockName;
+        this.leaseMillis = leaseMillis;
+        this.autoRenew = autoRenew;
+    }
+
+    /**
+     * 阻塞直到获取锁，等待期间的中断会在获取锁之后恢复
+     */
+    @Override
+    public void lock() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                this.lockInterruptibly();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        this.tryLock(-1L, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean tryLock() {
+        String owner = this.owner();
+        return this.reenter(owner) || this.tryAcquire(owner);
+    }
+
+    /**
+     * 在等待时间内循环重试获取锁
+     *
+     * @param time 等待锁的时间，如果为-1，则一直等待
+     */
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        String owner = this.owner();
+        if (this.reenter(owner)) {
+            return true;
+        }
+        long deadline = time < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + unit.toMillis(time);
+        for (int retries = 0; ; retries++) {
+            if (this.tryAcquire(owner)) {
+                return true;
+            }
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                return false;
+            }
+            Thread.sleep(Math.min(MysqlLockClient.backoff(retries), remaining));
+        }
+    }
+
+    /**
+     * 当前持有者已经持有该锁、且租约仍然有效时只在本地增加重入次数，否则丢弃本地记录
+     */
+    private boolean reenter(String owner) {
+        Hold hold = this.holds.get(lockName);
+        if (hold == null || !hold.owner.equals(owner)) {
+            return false;
+        }
+        if (hold.isValid()) {
+            hold.count++;
+            return true;
+        }
+        this.holds.remove(lockName, hold);
+        if (hold.renewal != null) {
+            hold.renewal.cancel(false);
+        }
+        return false;
+    }
+
+    private boolean tryAcquire(String owner) {
+        // 租期从写入前开始计算，本地记录的租期不会晚于数据库中的过期时间
+        long start = System.currentTimeMillis();
+        this.leaseMapper.tryAcquire(lockName, owner, leaseMillis);
+        if (!owner.equals(this.leaseMapper.selectOwner(lockName))) {
+            return false;
+        }
+        Hold hold = new Hold(owner);
+        hold.deadline = start + leaseMillis;
+        this.holds.put(lockName, hold);
+        if (!autoRenew) {
+            return true;
+        }
+        // 定时续期，续期失败说明锁已过期被其他节点获取
+        long period = Math.max(1, leaseMillis / 3);
+        hold.renewal = this.scheduler.scheduleAtFixedRate(() -> {
+            try {
+                long renewStart = System.currentTimeMillis();
+                if (this.leaseMapper.renew(lockName, owner, leaseMillis) == 0) {
+                    System.out.println("mysql锁续期失败，锁已被释放或过期：" + lockName);
+                    hold.lost = true;
+                    hold.renewal.cancel(false);
+                } else {
+                    hold.deadline = renewStart + leaseMillis;
+                }
+            } catch (Exception e) {
+                // 数据库暂时不可用时保留续期任务，下一个周期继续尝试
+                e.printStackTrace();
+            }
+        }, period, period, TimeUnit.MILLISECONDS);
+        return true;
+    }
+
+    @Override
+    public void unlock() {
+        String owner = this.owner();
+        Hold hold = this.holds.get(lockName);
+        if (hold == null || !hold.owner.equals(owner)) {
+            throw new IllegalMonitorStateException("this lock doesn't belong to you!");
+        }
+        if (--hold.count > 0) {
+            return;
+        }
+        this.holds.remove(lockName, hold);
+        if (hold.renewal != null) {
+            hold.renewal.cancel(false);
+        }
+        if (this.leaseMapper.release(lockName, owner) == 0) {
+            throw new IllegalMonitorStateException("mysql lock lease expired: " + lockName);
+        }
+    }
+
+    @Override
+    public Condition newCondition() {
+        return null;
+    }
+
+    private String owner() {
+        return uuid + ":" + Thread.currentThread().getId();
+    }
+
+    /**
+     * 本地记录的持有者、重入次数和续期任务，count 只由持有者线程修改
+     */
+    static class Hold {
+
+        private final String owner;
+
+        private int count = 1;
+
+        private volatile ScheduledFuture<?> renewal;
+
+        /**
+         * 租期的结束时间，每次续期成功后延长
+         */
+        private volatile long deadline;
+
+        /**
+         * 续期时发现锁已被释放或过期
+         */
+        private volatile boolean lost;
+
+        Hold(String owner) {
+            this.owner = owner;
+        }
+
+        boolean isValid() {
+            return !lost && System.currentTimeMillis() < deadline;
+        }
+    }
+}
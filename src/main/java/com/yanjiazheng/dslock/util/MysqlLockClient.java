@@ -0,0 +1,213 @@
+package com.yanjiazheng.dslock.util;
+
+import com.yanjiazheng.dslock.mapper.LockLeaseMapper;
+import com.yanjiazheng.dslock.mapper.LockMapper;
+import com.yanjiazheng.dslock.pojo.Lock;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.util.Date;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于 mysql 的分布式锁客户端
+ * <p>
+ * 锁表（tb_lock，lock_name 唯一）：{@link #lockAsync(String)}；
+ * 咨询锁（GET_LOCK / RELEASE_LOCK）：{@link #getAdvisoryLock(String)}；
+ * 租约表（tb_lock_lease，带过期时间和续期）：{@link #getLeaseLock(String)}。
+ *
+ * @author hp
+ */
+@Component
+public class MysqlLockClient {
+
+    /**
+     * 重试间隔的初始值和上限（毫秒）
+     */
+    private static final long BASE_BACKOFF = 20;
+
+    private static final long MAX_BACKOFF = 500;
+
+    /**
+     * 租约锁的默认租期（毫秒）
+     */
+    private static final long DEFAULT_LEASE = 30000;
+
+    @Autowired
+    private LockMapper lockMapper;
+
+    @Autowired
+    private LockLeaseMapper leaseMapper;
+
+    @Autowired
+    private DataSource dataSource;
+
+    /**
+     * 同时等待和持有咨询锁的线程数上限，必须小于连接池大小，剩下的连接留给锁内的业务 SQL
+     */
+    @Value("${dslock.mysql.advisory-permits:8}")
+    private int advisoryPermits;
+
+    private Semaphore advisorySemaphore;
+
+    /**
+     * 本节点的唯一标识，与线程id组成租约锁的持有者
+     */
+    private final String uuid = UUID.randomUUID().toString();
+
+    /**
+     * 本节点持有的租约锁：锁名称 -> 持有者、重入次数和续期任务
+     */
+    private final Map<String, MysqlLeaseLock.Hold> holds = new ConcurrentHashMap<>();
+
+    /**
+     * JDBC 调用本身是阻塞的，这里只在执行插入/删除语句时占用线程，重试之间的等待交给定时任务
+     */
+    private final ScheduledExecutorService executor = Executors.newScheduledThreadPool(4, r -> {
+        Thread thread = new Thread(r, "mysql-lock-async");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    @PostConstruct
+    public void init() {
+        this.advisorySemaphore = new Semaphore(advisoryPermits, true);
+    }
+
+    @PreDestroy
+    public void destroy() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * 获取 GET_LOCK 咨询锁，持有期间占用一个数据库连接
+     */
+    public MysqlAdvisoryLock getAdvisoryLock(String lockName) {
+        return new MysqlAdvisoryLock(dataSource, advisorySemaphore, lockName);
+    }
+
+    /**
+     * 获取默认租期的租约锁
+     */
+    public MysqlLeaseLock getLeaseLock(String lockName) {
+        return this.getLeaseLock(lockName, DEFAULT_LEASE, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 获取租约锁，持有期间每 1/3 租期自动续期
+     *
+     * @param leaseTime 租期，节点宕机后最多经过一个租期锁会被其他节点获取
+     */
+    public MysqlLeaseLock getLeaseLock(String lockName, long leaseTime, TimeUnit unit) {
+        return this.getLeaseLock(lockName, leaseTime, unit, true);
+    }
+
+    /**
+     * 获取租约锁
+     *
+     * @param autoRenew 为false时不续期，租期结束后锁自动失效（与 redisson 的 leaseTime 含义相同）
+     */
+    public MysqlLeaseLock getLeaseLock(String lockName, long leaseTime, TimeUnit unit, boolean autoRenew) {
+        return new MysqlLeaseLock(this, lockName, unit.toMillis(leaseTime), autoRenew);
+    }
+
+    /**
+     * 第 retries 次重试前的等待时间：指数退避，上限 MAX_BACKOFF，在后一半范围内随机抖动
+     */
+    public static long backoff(int retries) {
+        long backoff = Math.min(MAX_BACKOFF, BASE_BACKOFF << Math.min(retries, 5));
+        return backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+    }
+
+    LockLeaseMapper getLeaseMapper() {
+        return leaseMapper;
+    }
+
+    ScheduledExecutorService getExecutor() {
+        return executor;
+    }
+
+    Map<String, MysqlLeaseLock.Hold> getHolds() {
+        return holds;
+    }
+
+    String getUuid() {
+        return uuid;
+    }
+
+    /**
+     * 非阻塞地获取 mysql 锁：插入锁记录，唯一键冲突时按指数退避（带随机抖动）安排下一次尝试
+     * 返回的 future 在执行器线程上完成，超时可以通过 {@link CompletableFuture#orTimeout} 设置
+     *
+     * @param lockName 锁名称
+     */
+    public CompletableFuture<LockHandle> lockAsync(String lockName) {
+        CompletableFuture<LockHandle> future = new CompletableFuture<>();
+        executor.execute(() -> attempt(lockName, future, 0));
+        return future;
+    }
+
+    private void attempt(String lockName, CompletableFuture<LockHandle> future, int retries) {
+        if (future.isDone()) {
+            return;
+        }
+        Lock lock = new Lock();
+        lock.setLockName(lockName);
+        lock.setClassName(this.getClass().getName());
+        lock.setThreadName(Thread.currentThread().getName());
+        lock.setCreateTime(new Date());
+        try {
+            this.lockMapper.insert(lock);
+        } catch (DuplicateKeyException e) {
+            // 锁被占用，退避后重试
+            executor.schedule(() -> attempt(lockName, future, retries + 1), backoff(retries), TimeUnit.MILLISECONDS);
+            return;
+        } catch (Exception e) {
+            future.completeExceptionally(e);
+            return;
+        }
+        MysqlLockHandle handle = new MysqlLockHandle(lock);
+        if (!future.complete(handle)) {
+            // 调用方已经取消或超时，立即释放
+            handle.unlock();
+        }
+    }
+
+    private class MysqlLockHandle implements LockHandle {
+
+        private final Lock lock;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        MysqlLockHandle(Lock lock) {
+            this.lock = lock;
+        }
+
+        @Override
+        public String getName() {
+            return lock.getLockName();
+        }
+
+        @Override
+        public void unlock() {
+            if (!released.compareAndSet(false, true)) {
+                throw new IllegalMonitorStateException("lock already released: " + lock.getLockName());
+            }
+            lockMapper.deleteById(lock.getId());
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package com.yanjiazheng.dslock.util;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 非阻塞获取的 Redis 锁
+ * <p>
+ * 等待期间不占用线程：获取失败后在解锁通知上登记一次性回调，同时按锁的剩余过期时间安排一次超时重试，
+ * 两者先到者触发下一次尝试。持有者标识属于这次获取本身，而不是某个线程，因此可以在任意线程释放。
+ * 调用方从外部结束 future（orTimeout / cancel）时撤销登记的回调，已经取走的解锁通知转交给下一个等待者，不会被吞掉。
+ * 指定固定租期时锁在租期结束后自动释放，不由看门狗续期，否则使用默认过期时间并由看门狗续期。
+ *
+ * @author hp
+ */
+public class RedisAsyncLock implements LockHandle {
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final LockWatchdog watchdog;
+
+    private final LockPubSub pubSub;
+
+    private final ScheduledExecutorService executor;
+
+    private final String lockName;
+
+    private final String owner;
+
+    /**
+     * 固定租期（毫秒），小于等于0时使用默认过期时间并由看门狗续期
+     */
+    private final long leaseMillis;
+
+    private final long expire = 30;
+
+    private final String channel;
+
+    private final CompletableFuture<LockHandle> future = new CompletableFuture<>();
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private LockPubSub.Entry entry;
+
+    /**
+     * 看门狗续期的租约，固定租期时为null
+     */
+    private volatile LockWatchdog.Lease lease;
+
+    /**
+     * 当前登记的回调
+     */
+    private volatile Waiter waiter;
+
+    RedisAsyncLock(DistributedLockClient client, String lockName, String owner, long leaseMillis) {
+        this.redisTemplate = client.getRedisTemplate();
+        this.watchdog = client.getWatchdog();
+        this.pubSub = client.getPubSub();
+        this.executor = client.getAsyncExecutor();
+        this.lockName = lockName;
+        this.owner = owner;
+        this.leaseMillis = leaseMillis;
+        this.channel = LockPubSub.channel(lockName);
+    }
+
+    CompletableFuture<LockHandle> acquire() {
+        this.entry = pubSub.subscribe(channel);
+        future.whenComplete((handle, e) -> {
+            Waiter w = this.waiter;
+            if (w != null) {
+                w.cancel();
+            }
+            pubSub.unsubscribe(channel, entry);
+        });
+        executor.execute(this::attempt);
+        return future;
+    }
+
+    /**
+     * 执行一次加锁脚本，失败则登记下一次尝试
+     */
+    private void attempt() {
+        if (future.isDone()) {
+            return;
+        }
+        // 先登记回调再尝试，保证尝试失败之后发布的解锁消息不会丢失
+        Waiter waiter = new Waiter();
+        entry.addListener(waiter);
+        this.waiter = waiter;
+        Long ttl;
+        try {
+            ttl = leaseMillis > 0
+                    ? redisTemplate.execute(DistributedRedisLock.LEASE_LOCK_SCRIPT, Collections.singletonList(lockName), owner, String.valueOf(leaseMillis))
+                    : redisTemplate.execute(DistributedRedisLock.LOCK_SCRIPT, Collections.singletonList(lockName), owner, String.valueOf(expire));
+        } catch (Exception e) {
+            waiter.cancel();
+            future.completeExceptionally(e);
+            return;
+        }
+        if (ttl == null) {
+            waiter.cancel();
+            if (leaseMillis <= 0) {
+                lease = watchdog.register(lockName, owner, expire);
+            }
+            if (!future.complete(this)) {
+                // 调用方已经取消或超时，立即释放
+                unlock();
+            }
+            return;
+        }
+        // 最多等到锁的剩余过期时间
+        waiter.timeout = executor.schedule(waiter, ttl > 0 ? ttl : 50, TimeUnit.MILLISECONDS);
+        if (future.isDone()) {
+            // 尝试期间 future 已被外部结束，whenComplete 可能没有看到这次登记的回调
+            waiter.cancel();
+        }
+    }
+
+    @Override
+    public String getName() {
+        return lockName;
+    }
+
+    @Override
+    public void unlock() {
+        if (!released.compareAndSet(false, true)) {
+            throw new IllegalMonitorStateException("lock already released: " + lockName);
+        }
+        LockWatchdog.Lease l = lease;
+        if (l != null) {
+            watchdog.deregister(l);
+        }
+        Long flag = redisTemplate.execute(DistributedRedisLock.UNLOCK_SCRIPT,
+                Arrays.asList(lockName, channel), owner, LockPubSub.UNLOCK_MESSAGE);
+        if (flag == null) {
+            throw new IllegalMonitorStateException("this lock doesn't belong to you!");
+        }
+    }
+
+    /**
+     * 解锁通知和超时重试共用的一次性触发器
+     */
+    private class Waiter implements Runnable {
+
+        private final AtomicBoolean fired = new AtomicBoolean();
+
+        private volatile ScheduledFuture<?> timeout;
+
+        @Override
+        public void run() {
+            if (!fired.compareAndSet(false, true)) {
+                return;
+            }
+            // 不在回调队列中说明是被解锁通知取走的，否则是超时触发
+            boolean signalled = !entry.removeListener(this);
+            ScheduledFuture<?> t = timeout;
+            if (t != null) {
+                t.cancel(false);
+            }
+            if (future.isDone()) {
+                if (signalled) {
+                    entry.signal();
+                }
+                return;
+            }
+            // 回调可能运行在订阅线程上，重试交给执行器
+            executor.execute(RedisAsyncLock.this::attempt);
+        }
+
+        /**
+         * 不再需要回调（已获取、出错或 future 已被外部结束）：撤销回调和超时，已经被解锁通知取走时把通知转交给下一个等待者
+         */
+        void cancel() {
+            if (!fired.compareAndSet(false, true)) {
+                return;
+            }
+            ScheduledFuture<?> t = timeout;
+            if (t != null) {
+                t.cancel(false);
+            }
+            if (!entry.removeListener(this)) {
+                entry.signal();
+            }
+        }
+    }
+}
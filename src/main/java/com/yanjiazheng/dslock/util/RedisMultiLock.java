@@ -0,0 +1,283 @@
+package com.yanjiazheng.dslock.util;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+
+/**
+ * 多个锁名称的原子联锁
+ * <p>
+ * 锁名称排序去重后由一个 Lua 脚本全部获取或全部不获取，避免多次往返和加锁顺序导致的死锁；
+ * 持有期间所有 key 在同一个看门狗批次中续期，释放也只需要一次调用；指定固定租期时不续期，租期结束后锁自动释放。
+ * 持有者标识与 {@link DistributedRedisLock} 相同（客户端uuid:线程id），同一线程已持有的单锁可以重入。
+ *
+ * @author hp
+ */
+public class RedisMultiLock implements Lock {
+
+    /**
+     * 联锁加锁脚本：KEYS 为排序后的锁名称，ARGV[1] 为持有者标识，ARGV[2] 为过期时间（毫秒）
+     * 全部获取成功返回nil，否则返回 {第一个被占用的锁下标, 该锁的剩余过期时间（毫秒）}
+     */
+    @SuppressWarnings("rawtypes")
+    public static final RedisScript<List> LOCK_SCRIPT = RedisScript.of(
+            // 先检查所有锁，有任何一个被其他持有者占用则直接返回
+            "for i, key in ipairs(KEYS) do " +
+                    "   if redis.call('exists', key) == 1 and redis.call('hexists', key, ARGV[1]) == 0 then " +
+                    "       return {i, redis.call('pttl', key)} " +
+                    "   end " +
+                    "end " +
+                    // 全部可用，一次性加锁
+                    "for i, key in ipairs(KEYS) do " +
+                    "   redis.call('hincrby', key, ARGV[1], 1) " +
+                    "   redis.call('pexpire', key, ARGV[2]) " +
+                    "end " +
+                    "return nil",
+            List.class
+    );
+
+    /**
+     * 联锁解锁脚本：ARGV[1] 为持有者标识，ARGV[2] 为通知频道前缀，ARGV[3] 为解锁消息
+     * 返回实际属于该持有者的锁数量
+     */
+    public static final RedisScript<Long> UNLOCK_SCRIPT = RedisScript.of(
+            "local released = 0 " +
+                    "for i, key in ipairs(KEYS) do " +
+                    "   if redis.call('hexists', key, ARGV[1]) == 1 then " +
+                    "       if redis.call('hincrby', key, ARGV[1], -1) <= 0 then " +
+                    "           redis.call('del', key) " +
+                    // 通知等待该锁的线程
+                    "           redis.call('publish', ARGV[2] .. key, ARGV[3]) " +
+                    "       end " +
+                    "       released = released + 1 " +
+                    "   end " +
+                    "end " +
+                    "return released",
+            Long.class
+    );
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final LockWatchdog watchdog;
+
+    private final LockPubSub pubSub;
+
+    private final String uuid;
+
+    private final List<String> lockNames;
+
+    private long expire = 30;
+
+    /**
+     * 固定租期（毫秒），大于0时租期结束后锁自动释放，不由看门狗续期
+     */
+    private long leaseMillis;
+
+    private String holdOwner;
+
+    private int holdCount;
+
+    /**
+     * 看门狗续期的租约，固定租期时为空
+     */
+    private List<LockWatchdog.Lease> holdLeases = Collections.emptyList();
+
+    /**
+     * 固定租期的结束时间
+     */
+    private long holdDeadline;
+
+    public RedisMultiLock(DistributedLockClient client, String... lockNames) {
+        this.redisTemplate = client.getRedisTemplate();
+        this.watchdog = client.getWatchdog();
+        this.pubSub = client.getPubSub();
+        this.uuid = client.getUuid();
+        // 固定的加锁顺序
+        this.lockNames = new ArrayList<>(new TreeSet<>(Arrays.asList(lockNames)));
+        if (this.lockNames.isEmpty()) {
+            throw new IllegalArgumentException("lockNames cannot be empty");
+        }
+    }
+
+    /**
+     * 阻塞直到获取全部锁，等待期间的中断会在获取锁之后恢复
+     */
+    @Override
+    public void lock() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                this.lockInterruptibly();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        this.tryLock(-1L, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean tryLock() {
+        String owner = this.owner();
+        return this.reenter(owner) || this.tryAcquire(owner) == null;
+    }
+
+    /**
+     * 尝试获取全部锁，获取失败时等待第一个被占用的锁的解锁通知
+     *
+     * @param time 等待锁的时间，如果为-1，则一直等待
+     */
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        String owner = this.owner();
+        if (this.reenter(owner)) {
+            return true;
+        }
+        long deadline = time < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + unit.toMillis(time);
+        List<?> blocked = this.tryAcquire(owner);
+        while (blocked != null) {
+            String channel = this.channelOf(blocked);
+            LockPubSub.Entry entry = this.pubSub.subscribe(channel);
+            try {
+                // 登记后再试一次，避免错过登记之前发布的解锁消息
+                blocked = this.tryAcquire(owner);
+                // 阻塞的锁换了一个时重新登记
+                while (blocked != null && channel.equals(this.channelOf(blocked))) {
+                    long remaining = deadline - System.currentTimeMillis();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    long ttl = ((Number) blocked.get(1)).longValue();
+                    entry.await(ttl > 0 ? Math.min(ttl, remaining) : Math.min(50, remaining));
+                    blocked = this.tryAcquire(owner);
+                }
+            } finally {
+                this.pubSub.unsubscribe(channel, entry);
+            }
+        }
+        return true;
+    }
+
+    private String channelOf(List<?> blocked) {
+        return LockPubSub.channel(lockNames.get(((Number) blocked.get(0)).intValue() - 1));
+    }
+
+    /**
+     * 指定固定租期后尝试获取全部锁，语义与 {@link DistributedRedisLock#tryLock(long, long, TimeUnit)} 相同
+     *
+     * @param waitTime  等待锁的时间，如果为-1，则一直等待
+     * @param leaseTime 锁的租期（精确到毫秒），租期结束后锁自动释放、不续期；小于等于0时使用默认过期时间并由看门狗续期
+     * @param unit      时间单位
+     */
+    public boolean tryLock(long waitTime, long leaseTime, TimeUnit unit) throws InterruptedException {
+        this.leaseMillis = leaseTime > 0 ? unit.toMillis(leaseTime) : 0;
+        return this.tryLock(waitTime, unit);
+    }
+
+    /**
+     * 持有的锁仍然有效时只在本地增加重入次数，租期已经结束或续期失败时丢弃本地记录，重新到 Redis 加锁
+     */
+    private boolean reenter(String owner) {
+        if (!owner.equals(holdOwner)) {
+            return false;
+        }
+        if (this.isValid()) {
+            holdCount++;
+            return true;
+        }
+        this.holdOwner = null;
+        this.deregister();
+        return false;
+    }
+
+    private boolean isValid() {
+        if (holdLeases.isEmpty()) {
+            return System.currentTimeMillis() < holdDeadline;
+        }
+        for (LockWatchdog.Lease lease : holdLeases) {
+            if (!lease.isValid()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private List<?> tryAcquire(String owner) {
+        long start = System.currentTimeMillis();
+        long millis = leaseMillis > 0 ? leaseMillis : expire * 1000;
+        List<?> blocked = this.redisTemplate.execute(LOCK_SCRIPT, lockNames, owner, String.valueOf(millis));
+        if (blocked == null || blocked.isEmpty()) {
+            this.holdOwner = owner;
+            this.holdCount = 1;
+            this.holdDeadline = start + millis;
+            if (leaseMillis > 0) {
+                this.holdLeases = Collections.emptyList();
+                return null;
+            }
+            // 同时登记的租约落在时间轮的同一个槽位，在同一次批量调用中续期
+            List<LockWatchdog.Lease> leases = new ArrayList<>(lockNames.size());
+            for (String lockName : lockNames) {
+                leases.add(this.watchdog.register(lockName, owner, expire));
+            }
+            this.holdLeases = leases;
+            return null;
+        }
+        return blocked;
+    }
+
+    /**
+     * 注销持有期间登记的续期，看门狗按登记次数计数，同一线程仍以单锁持有的 key 会继续续期
+     */
+    private void deregister() {
+        for (LockWatchdog.Lease lease : holdLeases) {
+            this.watchdog.deregister(lease);
+        }
+        this.holdLeases = Collections.emptyList();
+    }
+
+    @Override
+    public void unlock() {
+        String owner = this.owner();
+        if (!owner.equals(holdOwner)) {
+            throw new IllegalMonitorStateException("this lock doesn't belong to you!");
+        }
+        if (--holdCount > 0) {
+            return;
+        }
+        this.holdOwner = null;
+        this.deregister();
+        Long released = this.redisTemplate.execute(UNLOCK_SCRIPT, lockNames, owner,
+                LockPubSub.CHANNEL_PREFIX, LockPubSub.UNLOCK_MESSAGE);
+        if (released == null || released < lockNames.size()) {
+            throw new IllegalMonitorStateException("some of the locks don't belong to you: " + lockNames);
+        }
+    }
+
+    @Override
+    public Condition newCondition() {
+        return null;
+    }
+
+    public List<String> getLockNames() {
+        return lockNames;
+    }
+
+    private String owner() {
+        return uuid + ":" + Thread.currentThread().getId();
+    }
+}
@@ -0,0 +1,215 @@
+package com.yanjiazheng.dslock.util;
+
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * 基于 Redis 的可重入读写锁
+ * <p>
+ * 锁是一个哈希：mode 字段记录当前模式（read / write），每个持有者一个字段记录重入次数，
+ * 读者字段为 {@code 客户端uuid:线程id:read}，写者字段为 {@code 客户端uuid:线程id:write}。
+ * 读者之间共享，写者独占；持有写锁的线程可以再获取读锁（降级），持有读锁时获取写锁会一直等待（不支持升级）。
+ * 有写者在等待时（{@code 锁名:writeWait} 存在），新的读者不再进入，避免写者被持续的读请求饿死；
+ * 写者超时或被中断放弃等待时，如果标记仍是自己登记的就立即删除并唤醒等待者，读者不必等到标记过期。
+ * 续期、重入计数和解锁通知与 {@link DistributedRedisLock} 相同，写锁释放时唤醒所有等待者。
+ *
+ * @author hp
+ */
+public class RedisReadWriteLock implements ReadWriteLock {
+
+    /**
+     * 读锁加锁脚本：KEYS[1] 锁名称，KEYS[2] 写者等待标记
+     * ARGV[1] 读者字段，ARGV[2] 过期时间（秒），ARGV[3] 同一线程的写者字段
+     * 获取成功返回nil，否则返回锁的剩余过期时间（毫秒）
+     */
+    public static final RedisScript<Long> READ_LOCK_SCRIPT = RedisScript.of(
+            "local mode = redis.call('hget', KEYS[1], 'mode') " +
+                    "if mode == false then " +
+                    "   redis.call('hset', KEYS[1], 'mode', 'read') " +
+                    "end " +
+                    // 读模式下没有写者等待（或自己已是读者），或者自己持有写锁（降级）
+                    "if mode == false " +
+                    "   or (mode == 'read' and (redis.call('exists', KEYS[2]) == 0 or redis.call('hexists', KEYS[1], ARGV[1]) == 1)) " +
+                    "   or (mode == 'write' and redis.call('hexists', KEYS[1], ARGV[3]) == 1) then " +
+                    "   redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+                    "   redis.call('expire', KEYS[1], ARGV[2]) " +
+                    "   return nil " +
+                    "end " +
+                    "return redis.call('pttl', KEYS[1])",
+            Long.class
+    );
+
+    /**
+     * 写锁加锁脚本：KEYS[1] 锁名称，KEYS[2] 写者等待标记
+     * ARGV[1] 写者字段，ARGV[2] 过期时间（秒），ARGV[3] 写者等待标记的有效期（毫秒）
+     * 获取成功返回nil，否则登记写者等待并返回锁的剩余过期时间（毫秒）
+     */
+    public static final RedisScript<Long> WRITE_LOCK_SCRIPT = RedisScript.of(
+            "local mode = redis.call('hget', KEYS[1], 'mode') " +
+                    "if mode == false then " +
+                    "   redis.call('hset', KEYS[1], 'mode', 'write') " +
+                    "   redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+                    "   redis.call('expire', KEYS[1], ARGV[2]) " +
+                    // 其他仍在等待的写者会在下一次尝试时重新登记
+                    "   redis.call('del', KEYS[2]) " +
+                    "   return nil " +
+                    "end " +
+                    "if mode == 'write' and redis.call('hexists', KEYS[1], ARGV[1]) == 1 then " +
+                    "   redis.call('hincrby', KEYS[1], ARGV[1], 1) " +
+                    "   redis.call('expire', KEYS[1], ARGV[2]) " +
+                    "   return nil " +
+                    "end " +
+                    "redis.call('set', KEYS[2], ARGV[1], 'px', ARGV[3]) " +
+                    "return redis.call('pttl', KEYS[1])",
+            Long.class
+    );
+
+    /**
+     * 撤销写者等待标记：KEYS[1] 写者等待标记，KEYS[2] 通知频道，ARGV[1] 写者字段，ARGV[2] 唤醒消息
+     * 标记仍是该写者登记的才删除并唤醒等待者，返回是否删除
+     */
+    public static final RedisScript<Long> CANCEL_WRITE_WAIT_SCRIPT = RedisScript.of(
+            "if redis.call('get', KEYS[1]) == ARGV[1] then " +
+                    "   redis.call('del', KEYS[1]) " +
+                    // 被标记挡住的读者立即重试
+                    "   redis.call('publish', KEYS[2], ARGV[2]) " +
+                    "   return 1 " +
+                    "end " +
+                    "return 0",
+            Long.class
+    );
+
+    /**
+     * 读写锁共用的解锁脚本：KEYS[1] 锁名称，KEYS[2] 通知频道
+     * ARGV[1] 持有者字段，ARGV[2] 唤醒消息，ARGV[3] 是否写者字段（1 / 0）
+     * 锁不属于该持有者返回nil，字段被删除返回1，仍有重入返回0
+     */
+    public static final RedisScript<Long> UNLOCK_SCRIPT = RedisScript.of(
+            "if redis.call('hexists', KEYS[1], ARGV[1]) == 0 then return nil end " +
+                    "if redis.call('hincrby', KEYS[1], ARGV[1], -1) > 0 then return 0 end " +
+                    "redis.call('hdel', KEYS[1], ARGV[1]) " +
+                    // 只剩下 mode 字段，锁已完全释放
+                    "if redis.call('hlen', KEYS[1]) == 1 then " +
+                    "   redis.call('del', KEYS[1]) " +
+                    "   redis.call('publish', KEYS[2], ARGV[2]) " +
+                    "elseif ARGV[3] == '1' then " +
+                    // 写者释放后只剩下自己降级获取的读锁
+                    "   redis.call('hset', KEYS[1], 'mode', 'read') " +
+                    "   redis.call('publish', KEYS[2], ARGV[2]) " +
+                    "end " +
+                    "return 1",
+            Long.class
+    );
+
+    private static final String READ_SUFFIX = ":read";
+
+    private static final String WRITE_SUFFIX = ":write";
+
+    /**
+     * 写者等待标记的有效期（毫秒），等待中的写者每半个周期刷新一次
+     */
+    private static final long WRITE_WAIT = 5000;
+
+    private final ReadLock readLock;
+
+    private final WriteLock writeLock;
+
+    public RedisReadWriteLock(DistributedLockClient client, String lockName) {
+        this.readLock = new ReadLock(client, lockName);
+        this.writeLock = new WriteLock(client, lockName);
+    }
+
+    @Override
+    public DistributedRedisLock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public DistributedRedisLock writeLock() {
+        return writeLock;
+    }
+
+    /**
+     * 读锁和写锁的公共部分：持有者字段带模式后缀，本地重入计数按持有者区分
+     */
+    private abstract static class Mode extends DistributedRedisLock {
+
+        private final String suffix;
+
+        Mode(DistributedLockClient client, String lockName, String suffix) {
+            super(client, lockName, null);
+            this.suffix = suffix;
+        }
+
+        @Override
+        protected String owner() {
+            return super.owner() + suffix;
+        }
+
+        /**
+         * 同一个锁名称可以有多个读者，本地重入计数按持有者区分
+         */
+        @Override
+        protected String holdKey(String owner) {
+            return lockName + ":" + owner;
+        }
+
+        @Override
+        protected Long releaseOnce(String owner) {
+            return this.redisTemplate.execute(UNLOCK_SCRIPT, Arrays.asList(lockName, LockPubSub.channel(lockName)),
+                    owner, LockPubSub.WAKE_ALL_MESSAGE, WRITE_SUFFIX.equals(suffix) ? "1" : "0");
+        }
+
+        /**
+         * 去掉模式后缀的线程标识
+         */
+        String threadOwner(String owner) {
+            return owner.substring(0, owner.length() - suffix.length());
+        }
+    }
+
+    private static class ReadLock extends Mode {
+
+        ReadLock(DistributedLockClient client, String lockName) {
+            super(client, lockName, READ_SUFFIX);
+        }
+
+        @Override
+        protected Long acquireOnce(String owner) {
+            return this.redisTemplate.execute(READ_LOCK_SCRIPT, Arrays.asList(lockName, lockName + ":writeWait"),
+                    owner, String.valueOf(expire), threadOwner(owner) + WRITE_SUFFIX);
+        }
+    }
+
+    private static class WriteLock extends Mode {
+
+        WriteLock(DistributedLockClient client, String lockName) {
+            super(client, lockName, WRITE_SUFFIX);
+        }
+
+        @Override
+        protected Long acquireOnce(String owner) {
+            return this.redisTemplate.execute(WRITE_LOCK_SCRIPT, Arrays.asList(lockName, lockName + ":writeWait"),
+                    owner, String.valueOf(expire), String.valueOf(WRITE_WAIT));
+        }
+
+        /**
+         * 放弃等待时撤销自己登记的写者等待标记，其他写者登记的标记保留
+         */
+        @Override
+        protected void cancelWait(String owner) {
+            this.redisTemplate.execute(CANCEL_WRITE_WAIT_SCRIPT, Arrays.asList(lockName + ":writeWait", LockPubSub.channel(lockName)),
+                    owner, LockPubSub.WAKE_ALL_MESSAGE);
+        }
+
+        /**
+         * 在写者等待标记过期之前醒来刷新
+         */
+        @Override
+        protected long waitMillis(long ttl, long remaining) {
+            return Math.min(super.waitMillis(ttl, remaining), WRITE_WAIT / 2);
+        }
+    }
+}
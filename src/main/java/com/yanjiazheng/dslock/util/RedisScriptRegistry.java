@@ -0,0 +1,77 @@
+package com.yanjiazheng.dslock.util;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.redis.connection.RedisConnection;
+import org.springframework.data.redis.core.RedisCallback;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.stereotype.Component;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Lua 脚本注册中心
+ * <p>
+ * 所有锁和限流脚本都以常量的形式只编译一次（SHA1 在 {@link RedisScript} 中缓存），
+ * 在这里统一登记，应用启动完成后通过 SCRIPT LOAD 预加载到 Redis。
+ * 之后 {@link StringRedisTemplate#execute(RedisScript, java.util.List, Object...)} 只发送 EVALSHA，
+ * 如果 Redis 重启或执行过 SCRIPT FLUSH 返回 NOSCRIPT，模板会自动回退为 EVAL 重新加载脚本。
+ *
+ * @author hp
+ */
+@Component
+public class RedisScriptRegistry {
+
+    @Autowired
+    private StringRedisTemplate redisTemplate;
+
+    private final Map<String, RedisScript<?>> scripts = new ConcurrentHashMap<>();
+
+    /**
+     * 登记脚本，同名脚本只保留第一次登记的实例
+     *
+     * @param name   脚本名称
+     * @param script 脚本
+     * @return 实际登记的脚本
+     */
+    @SuppressWarnings("unchecked")
+    public <T> RedisScript<T> register(String name, RedisScript<T> script) {
+        return (RedisScript<T>) scripts.computeIfAbsent(name, k -> script);
+    }
+
+    public Map<String, RedisScript<?>> getScripts() {
+        return Collections.unmodifiableMap(scripts);
+    }
+
+    /**
+     * 应用启动完成后把所有脚本加载到 Redis 的脚本缓存中
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void preload() {
+        try {
+            Integer loaded = redisTemplate.execute((RedisCallback<Integer>) connection -> load(connection));
+            System.out.println("预加载Lua脚本：" + loaded + " 个");
+        } catch (Exception e) {
+            // Redis 不可用时不影响启动，首次执行时会通过 EVAL 加载
+            System.out.println("预加载Lua脚本失败：" + e.getMessage());
+        }
+    }
+
+    private int load(RedisConnection connection) {
+        int loaded = 0;
+        for (Map.Entry<String, RedisScript<?>> entry : scripts.entrySet()) {
+            String sha = connection.scriptingCommands()
+                    .scriptLoad(entry.getValue().getScriptAsString().getBytes(StandardCharsets.UTF_8));
+            if (!entry.getValue().getSha1().equals(sha)) {
+                throw new IllegalStateException("SHA1 mismatch for script: " + entry.getKey());
+            }
+            loaded++;
+        }
+        return loaded;
+    }
+}
@@ -0,0 +1,227 @@
+package com.yanjiazheng.dslock.util;
+
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 基于 Redis 的分布式信号量，用于限制整个集群对下游的并发调用数
+ * <p>
+ * 许可保存在有序集合 {@code semaphore:<名称>} 中，成员为许可id，分数为许可的过期时间（Redis 服务器时间，毫秒）。
+ * 每次获取先清理已过期的许可，因此节点宕机后未归还的许可最多在一个租期后被回收。
+ * 释放 n 个许可发布 n 条解锁消息，每条唤醒一个本地等待者。
+ * 获取到的许可与线程无关，可以在任意线程释放；持有期间由共享看门狗每 1/3 租期续期一次（ZADD XX 更新分数），
+ * 调用时间超过租期也不会丢失许可，租期只决定节点宕机后许可多久被回收。
+ *
+ * @author hp
+ */
+public class RedisSemaphore {
+
+    private static final String KEY_PREFIX = "semaphore:";
+
+    /**
+     * 获取许可脚本：KEYS[1] 许可集合，ARGV[1] 许可总数，ARGV[2] 租期（毫秒），ARGV[3..] 本次获取的许可id
+     * 获取成功返回nil，否则返回最早一个许可的剩余租期（毫秒）
+     */
+    public static final RedisScript<Long> ACQUIRE_SCRIPT = RedisScript.of(
+            // 使用 Redis 服务器时间，避免各节点时钟不一致
+            "local time = redis.call('time') " +
+                    "local now = tonumber(time[1]) * 1000 + math.floor(tonumber(time[2]) / 1000) " +
+                    "redis.call('zremrangebyscore', KEYS[1], '-inf', now) " +
+                    "if redis.call('zcard', KEYS[1]) + #ARGV - 2 <= tonumber(ARGV[1]) then " +
+                    "   for i = 3, #ARGV do " +
+                    "       redis.call('zadd', KEYS[1], now + tonumber(ARGV[2]), ARGV[i]) " +
+                    "   end " +
+                    // 集合的过期时间不短于任何一个许可的租期
+                    "   if redis.call('pttl', KEYS[1]) < tonumber(ARGV[2]) then " +
+                    "       redis.call('pexpire', KEYS[1], ARGV[2]) " +
+                    "   end " +
+                    "   return nil " +
+                    "end " +
+                    "local first = redis.call('zrange', KEYS[1], 0, 0, 'withscores') " +
+                    "return tonumber(first[2]) - now",
+            Long.class
+    );
+
+    /**
+     * 释放许可脚本：KEYS[1] 许可集合，KEYS[2] 通知频道，ARGV[1] 解锁消息，ARGV[2..] 许可id
+     * 返回实际释放的许可数量
+     */
+    public static final RedisScript<Long> RELEASE_SCRIPT = RedisScript.of(
+            "local released = 0 " +
+                    "for i = 2, #ARGV do " +
+                    "   released = released + redis.call('zrem', KEYS[1], ARGV[i]) " +
+                    "end " +
+                    // 每释放一个许可唤醒一个等待者
+                    "for i = 1, released do " +
+                    "   redis.call('publish', KEYS[2], ARGV[1]) " +
+                    "end " +
+                    "return released",
+            Long.class
+    );
+
+    private final StringRedisTemplate redisTemplate;
+
+    private final LockPubSub pubSub;
+
+    private final LockWatchdog watchdog;
+
+    private final String name;
+
+    private final String key;
+
+    private final String channel;
+
+    private final String uuid;
+
+    private final AtomicLong sequence;
+
+    private final int permits;
+
+    private final long leaseMillis;
+
+    /**
+     * @param client      锁客户端，提供 Redis 连接、解锁通知、续期看门狗和许可id序列
+     * @param name        信号量名称
+     * @param permits     集群范围内的许可总数
+     * @param leaseMillis 许可的租期（毫秒），持有期间自动续期，节点宕机后在租期结束时回收
+     */
+    public RedisSemaphore(DistributedLockClient client, String name, int permits, long leaseMillis) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("permits must be positive");
+        }
+        this.redisTemplate = client.getRedisTemplate();
+        this.pubSub = client.getPubSub();
+        this.watchdog = client.getWatchdog();
+        this.uuid = client.getUuid();
+        this.sequence = client.getPermitSequence();
+        this.name = name;
+        this.key = KEY_PREFIX + name;
+        this.channel = LockPubSub.channel(KEY_PREFIX + name);
+        this.permits = permits;
+        this.leaseMillis = leaseMillis;
+    }
+
+    /**
+     * 阻塞直到获取 n 个许可
+     */
+    public LockHandle acquire(int n) throws InterruptedException {
+        return this.tryAcquire(n, -1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 在超时时间内获取 n 个许可
+     *
+     * @param timeout 等待时间，0 表示只尝试一次，-1 表示一直等待
+     * @return 获取到的许可，超时返回null
+     */
+    public LockHandle tryAcquire(int n, long timeout, TimeUnit unit) throws InterruptedException {
+        if (n <= 0 || n > permits) {
+            throw new IllegalArgumentException("n must be between 1 and " + permits + ": " + n);
+        }
+        List<String> ids = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            ids.add(uuid + ":" + sequence.incrementAndGet());
+        }
+        Long wait = this.tryAcquire(ids);
+        if (wait == null) {
+            return new Permits(ids);
+        }
+        if (timeout == 0) {
+            return null;
+        }
+        long deadline = timeout < 0 ? Long.MAX_VALUE : System.currentTimeMillis() + unit.toMillis(timeout);
+        // 先登记等待再重试，保证重试失败之后发布的释放消息不会丢失
+        LockPubSub.Entry entry = this.pubSub.subscribe(channel);
+        try {
+            while (true) {
+                wait = this.tryAcquire(ids);
+                if (wait == null) {
+                    return new Permits(ids);
+                }
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return null;
+                }
+                // 最多等到最早一个许可过期
+                entry.await(wait > 0 ? Math.min(wait, remaining) : Math.min(50, remaining));
+            }
+        } finally {
+            this.pubSub.unsubscribe(channel, entry);
+        }
+    }
+
+    private Long tryAcquire(List<String> ids) {
+        Object[] args = new Object[ids.size() + 2];
+        args[0] = String.valueOf(permits);
+        args[1] = String.valueOf(leaseMillis);
+        for (int i = 0; i < ids.size(); i++) {
+            args[i + 2] = ids.get(i);
+        }
+        return this.redisTemplate.execute(ACQUIRE_SCRIPT, Collections.singletonList(key), args);
+    }
+
+    /**
+     * 当前已被占用的许可数量（可能包含尚未清理的过期许可）
+     */
+    public long usedPermits() {
+        Long size = this.redisTemplate.opsForZSet().zCard(key);
+        return size == null ? 0 : size;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 一次获取到的许可，持有期间由看门狗续期，释放时全部归还
+     */
+    private class Permits implements LockHandle {
+
+        private final List<String> ids;
+
+        private final List<LockWatchdog.Lease> leases;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        Permits(List<String> ids) {
+            this.ids = ids;
+            this.leases = new ArrayList<>(ids.size());
+            for (String id : ids) {
+                this.leases.add(watchdog.registerPermit(key, id, leaseMillis));
+            }
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void unlock() {
+            if (!released.compareAndSet(false, true)) {
+                throw new IllegalMonitorStateException("permits already released: " + name);
+            }
+            for (LockWatchdog.Lease lease : leases) {
+                watchdog.deregister(lease);
+            }
+            Object[] args = new Object[ids.size() + 1];
+            args[0] = LockPubSub.UNLOCK_MESSAGE;
+            for (int i = 0; i < ids.size(); i++) {
+                args[i + 1] = ids.get(i);
+            }
+            Long count = redisTemplate.execute(RELEASE_SCRIPT, Arrays.asList(key, channel), args);
+            if (count == null || count < ids.size()) {
+                // 续期失败（例如 Redis 长时间不可用）后许可超过租期被回收
+                System.out.println("部分许可已过期被回收：" + name + " " + (ids.size() - (count == null ? 0 : count)));
+            }
+        }
+    }
+}
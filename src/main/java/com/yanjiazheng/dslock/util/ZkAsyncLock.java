@@ -0,0 +1,264 @@
+package com.yanjiazheng.dslock.util;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 基于 zookeeper 异步 API 的非阻塞锁
+ * <p>
+ * create / getChildren / exists 全部使用回调串联，等待前一个节点删除期间不占用任何线程。
+ * 返回的 future 在 zookeeper 事件线程上完成，后续的阻塞操作应使用 *Async 方法切换线程。
+ * 节点名为 {@code lock-<guid>-<序号>}：连接断开时 create 的结果未知，重连后按 guid 找回自己的节点，
+ * 放弃获取时也按 guid 删除可能已经创建的孤儿节点，避免它在会话过期之前一直挡住后面的等待者。
+ * 父节点 {@code /distributed/<锁名>} 是容器节点，最后一个子节点删除后由服务端清理，
+ * 创建子节点时父节点不存在（第一次使用或刚被清理）就重新创建父节点。
+ *
+ * @author hp
+ */
+public class ZkAsyncLock implements LockHandle {
+
+    /**
+     * 连接断开时的重试间隔（毫秒）和次数
+     */
+    private static final long RETRY_DELAY = 200;
+
+    private static final int MAX_RETRIES = 25;
+
+    private final ZooKeeper zooKeeper;
+
+    private final ZkChildrenCache children;
+
+    private final ScheduledExecutorService retryExecutor;
+
+    private final String lockName;
+
+    private final String lockPath;
+
+    /**
+     * 本次获取的节点名前缀
+     */
+    private final String nodePrefix;
+
+    /**
+     * 为false时只尝试一次：存在前一个节点就删除自己的节点，并以null完成
+     */
+    private final boolean waitIfBlocked;
+
+    private final CompletableFuture<LockHandle> future = new CompletableFuture<>();
+
+    private final AtomicBoolean released = new AtomicBoolean();
+
+    private volatile String path;
+
+    ZkAsyncLock(ZkClient client, String lockName, boolean waitIfBlocked) {
+        this.zooKeeper = client.getZooKeeper();
+        this.children = client.refChildrenCache(lockName);
+        this.retryExecutor = client.getRetryExecutor();
+        this.lockName = lockName;
+        this.lockPath = ZkDistributedLock.ROOT_PATH + "/" + lockName;
+        this.nodePrefix = ZkDistributedLock.NODE_PREFIX + UUID.randomUUID() + "-";
+        this.waitIfBlocked = waitIfBlocked;
+        // 调用方取消或超时后删除自己的节点，避免阻塞后面的等待者
+        this.future.whenComplete((handle, e) -> {
+            // 加锁流程结束后不再使用子节点快照
+            client.unrefChildrenCache(lockName, children);
+            if (e != null) {
+                cleanup(0);
+            }
+        });
+    }
+
+    CompletableFuture<LockHandle> acquire() {
+        createNode(0);
+        return future;
+    }
+
+    private void createNode(int retries) {
+        zooKeeper.create(lockPath + "/" + nodePrefix, null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL,
+                (rc, p, ctx, name) -> {
+                    if (rc == KeeperException.Code.NONODE.intValue() && retries < MAX_RETRIES) {
+                        // 第一次使用该锁名称，或容器父节点刚被清理，创建父节点后重试
+                        zooKeeper.create(lockPath, null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.CONTAINER,
+                                (rc2, p2, ctx2, name2) -> createNode(retries + 1), null);
+                        return;
+                    }
+                    if (rc == KeeperException.Code.CONNECTIONLOSS.intValue()) {
+                        // 节点可能已经创建，重连后按 guid 查找
+                        retry(rc, p, retries, () -> findNode(retries + 1));
+                        return;
+                    }
+                    if (rc != KeeperException.Code.OK.intValue()) {
+                        fail(rc, p);
+                        return;
+                    }
+                    onCreated(name);
+                }, null);
+    }
+
+    /**
+     * 连接断开后查找自己是否已经创建了节点，没有则重新创建
+     */
+    private void findNode(int retries) {
+        zooKeeper.getChildren(lockPath, false, (rc, p, ctx, nodes) -> {
+            if (rc == KeeperException.Code.NONODE.intValue()) {
+                // 父节点不存在，自己的节点一定没有创建
+                if (!future.isDone()) {
+                    createNode(retries);
+                }
+                return;
+            }
+            if (rc != KeeperException.Code.OK.intValue()) {
+                retry(rc, p, retries, () -> findNode(retries + 1));
+                return;
+            }
+            children.update(nodes);
+            String own = ownNode(nodes);
+            if (own != null) {
+                onCreated(lockPath + "/" + own);
+            } else if (!future.isDone()) {
+                createNode(retries);
+            }
+        }, null);
+    }
+
+    private void onCreated(String name) {
+        this.path = name;
+        if (future.isDone()) {
+            deleteNode(0);
+            return;
+        }
+        checkPredecessor(0);
+    }
+
+    /**
+     * 查找前一个节点：不存在则获得锁，存在则只监听它的删除事件
+     * 共享的子节点快照中包含自己时不需要拉取子节点
+     */
+    private void checkPredecessor(int retries) {
+        if (future.isDone()) {
+            return;
+        }
+        String self = path.substring(path.lastIndexOf('/') + 1);
+        if (children.contains(self)) {
+            waitFor(children.lower(self), retries);
+            return;
+        }
+        zooKeeper.getChildren(lockPath, false, (rc, p, ctx, nodes) -> {
+            if (rc != KeeperException.Code.OK.intValue()) {
+                retry(rc, p, retries, () -> checkPredecessor(retries + 1));
+                return;
+            }
+            children.update(nodes);
+            if (!children.contains(self)) {
+                // 会话过期，临时节点已被删除
+                future.completeExceptionally(new IllegalStateException("lock node lost: " + path));
+                return;
+            }
+            waitFor(children.lower(self), retries);
+        }, null);
+    }
+
+    private void waitFor(String preNode, int retries) {
+        if (preNode == null) {
+            if (!future.complete(this)) {
+                unlock();
+            }
+            return;
+        }
+        if (!waitIfBlocked) {
+            deleteNode(0);
+            future.complete(null);
+            return;
+        }
+        zooKeeper.exists(lockPath + "/" + preNode, event -> checkPredecessor(0), (rc, p, ctx, stat) -> {
+            if (rc == KeeperException.Code.NONODE.intValue()) {
+                // 前一个节点已经删除，从快照中移除后继续向前查找
+                children.remove(preNode);
+                checkPredecessor(0);
+            } else if (rc != KeeperException.Code.OK.intValue()) {
+                retry(rc, p, retries, () -> checkPredecessor(retries + 1));
+            }
+        }, null);
+    }
+
+    /**
+     * 连接断开时延迟重试，其他错误或超过重试次数时获取失败
+     */
+    private void retry(int rc, String p, int retries, Runnable action) {
+        if (rc == KeeperException.Code.CONNECTIONLOSS.intValue() && retries < MAX_RETRIES) {
+            retryExecutor.schedule(action, RETRY_DELAY, TimeUnit.MILLISECONDS);
+        } else {
+            fail(rc, p);
+        }
+    }
+
+    private void fail(int rc, String p) {
+        future.completeExceptionally(KeeperException.create(KeeperException.Code.get(rc), p));
+    }
+
+    private String ownNode(List<String> nodes) {
+        for (String node : nodes) {
+            if (node.startsWith(nodePrefix)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String getName() {
+        return lockName;
+    }
+
+    @Override
+    public void unlock() {
+        if (!released.compareAndSet(false, true)) {
+            throw new IllegalMonitorStateException("lock already released: " + lockName);
+        }
+        deleteNode(0);
+    }
+
+    /**
+     * 获取失败后的清理：已知节点直接删除，否则按 guid 查找可能已经创建的孤儿节点
+     */
+    private void cleanup(int retries) {
+        if (path != null) {
+            deleteNode(retries);
+            return;
+        }
+        zooKeeper.getChildren(lockPath, false, (rc, p, ctx, nodes) -> {
+            if (rc == KeeperException.Code.CONNECTIONLOSS.intValue() && retries < MAX_RETRIES) {
+                retryExecutor.schedule(() -> cleanup(retries + 1), RETRY_DELAY, TimeUnit.MILLISECONDS);
+                return;
+            }
+            String own = rc == KeeperException.Code.OK.intValue() ? ownNode(nodes) : null;
+            if (own != null) {
+                this.path = lockPath + "/" + own;
+                deleteNode(retries);
+            }
+        }, null);
+    }
+
+    private void deleteNode(int retries) {
+        String node = this.path;
+        if (node == null) {
+            return;
+        }
+        zooKeeper.delete(node, -1, (rc, p, ctx) -> {
+            if (rc == KeeperException.Code.CONNECTIONLOSS.intValue() && retries < MAX_RETRIES) {
+                retryExecutor.schedule(() -> deleteNode(retries + 1), RETRY_DELAY, TimeUnit.MILLISECONDS);
+            } else if (rc != KeeperException.Code.OK.intValue() && rc != KeeperException.Code.NONODE.intValue()) {
+                System.out.println("删除锁节点失败：" + p + " " + KeeperException.Code.get(rc));
+            }
+        }, null);
+    }
+}
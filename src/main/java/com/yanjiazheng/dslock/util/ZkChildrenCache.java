@@ -0,0 +1,82 @@
+package com.yanjiazheng.dslock.util;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.function.Predicate;
+
+/**
+ * 一个锁名称下按序列号排序的子节点快照，本节点上所有等待该锁的加锁流程共享
+ * <p>
+ * 节点只会在创建时获得更大的序列号，所以只要快照中包含自己的节点，它就包含了创建时仍存在的全部前驱节点，
+ * 之后新建的节点都排在自己后面。因此只有快照中找不到自己时才需要重新 getChildren，
+ * 已删除的前驱节点在 exists 返回不存在时从快照中移除，不需要重新拉取。
+ * 新建的节点一定不在旧快照中，没有等待者时快照没有用处，因此按等待者计数，最后一个等待者结束后即从 {@link ZkClient} 中移除。
+ *
+ * @author hp
+ */
+class ZkChildrenCache {
+
+    /**
+     * 按节点名最后一个 '-' 之后的序列号排序
+     */
+    static final Comparator<String> BY_SEQUENCE = Comparator.comparingLong(ZkChildrenCache::sequence);
+
+    private volatile ConcurrentSkipListSet<String> snapshot = new ConcurrentSkipListSet<>(BY_SEQUENCE);
+
+    /**
+     * 正在使用快照的加锁流程数，只在 {@link ZkClient} 的 compute 中修改
+     */
+    int refs;
+
+    /**
+     * 快照中是否包含自己的节点，不包含时需要先拉取子节点再调用 {@link #lower(String)}
+     */
+    boolean contains(String self) {
+        return this.snapshot.contains(self);
+    }
+
+    /**
+     * 查找快照中紧挨在自己前面的节点
+     *
+     * @param self 自己的节点名
+     * @return 前一个节点名，不存在返回null
+     */
+    String lower(String self) {
+        return this.snapshot.lower(self);
+    }
+
+    /**
+     * 查找快照中排在自己前面、满足条件的最近一个节点（读写锁中读者只关心写节点）
+     *
+     * @return 满足条件的节点名，不存在返回null
+     */
+    String lower(String self, Predicate<String> filter) {
+        for (String node : this.snapshot.headSet(self, false).descendingSet()) {
+            if (filter.test(node)) {
+                return node;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 使用新拉取的子节点替换快照
+     */
+    void update(List<String> children) {
+        ConcurrentSkipListSet<String> fresh = new ConcurrentSkipListSet<>(BY_SEQUENCE);
+        fresh.addAll(children);
+        this.snapshot = fresh;
+    }
+
+    /**
+     * 前驱节点已经删除
+     */
+    void remove(String node) {
+        this.snapshot.remove(node);
+    }
+
+    static long sequence(String node) {
+        return Long.parseLong(node.substring(node.lastIndexOf('-') + 1));
+    }
+}
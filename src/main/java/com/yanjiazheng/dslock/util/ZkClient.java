@@ -7,6 +7,12 @@ import org.apache.zookeeper.ZooDefs;
 import org.apache.zookeeper.ZooKeeper;
 import org.springframework.stereotype.Component;
 
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
 @Component
 public class ZkClient {
 
@@ -16,6 +22,25 @@ public class ZkClient {
 
     private ZooKeeper zooKeeper;
 
+    /**
+     * 两级锁在本节点上按锁名称共享的排队状态
+     */
+    private final Map<String, HierarchicalLock.Node> localQueues = new ConcurrentHashMap<>();
+
+    /**
+     * 每个锁名称的子节点快照，本节点上等待同一个锁的线程共享，没有等待者时移除
+     */
+    private final Map<String, ZkChildrenCache> childrenCaches = new ConcurrentHashMap<>();
+
+    /**
+     * 异步加锁流程在连接断开时的延迟重试，回调本身运行在 zookeeper 事件线程上
+     */
+    private final ScheduledExecutorService retryExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "zk-lock-retry");
+        thread.setDaemon(true);
+        return thread;
+    });
+
     @PostConstruct
     public void init() {
         try {
@@ -26,6 +51,10 @@ public class ZkClient {
             if (this.zooKeeper.exists(ROOT_PATH, false) == null) {
                 this.zooKeeper.create(ROOT_PATH, null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
             }
+            // 创建读写锁根节点
+            if (this.zooKeeper.exists(ZkReadWriteLock.ROOT_PATH, false) == null) {
+                this.zooKeeper.create(ZkReadWriteLock.ROOT_PATH, null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.PERSISTENT);
+            }
         } catch (Exception e) {
             System.out.println("获取链接失败！");
             e.printStackTrace();
@@ -34,6 +63,7 @@ public class ZkClient {
 
     @PreDestroy
     public void destroy() {
+        retryExecutor.shutdownNow();
         try {
             if (zooKeeper != null) {
                 zooKeeper.close();
@@ -50,6 +80,70 @@ public class ZkClient {
      * @return
      */
     public ZkDistributedLock getZkDistributedLock(String lockName) {
-        return new ZkDistributedLock(zooKeeper, lockName);
+        return new ZkDistributedLock(this, lockName);
+    }
+
+    /**
+     * 获取zk读写锁，读者之间不互相阻塞
+     *
+     * @param lockName
+     * @return
+     */
+    public ZkReadWriteLock getReadWriteLock(String lockName) {
+        return new ZkReadWriteLock(this, lockName);
+    }
+
+    /**
+     * 基于异步 API 非阻塞地获取 zk 锁，等待期间不占用线程
+     *
+     * @param lockName
+     * @return
+     */
+    public CompletableFuture<LockHandle> lockAsync(String lockName) {
+        return new ZkAsyncLock(this, lockName, true).acquire();
+    }
+
+    /**
+     * 获取两级锁：本节点的线程先在本地排队，只有队头线程创建 zk 节点参与竞争
+     * zk 锁的重入计数绑定在线程上，因此不支持跨线程交接
+     *
+     * @param lockName
+     * @return
+     */
+    public HierarchicalLock getHierarchicalLock(String lockName) {
+        return new HierarchicalLock(localQueues, lockName, () -> getZkDistributedLock(lockName), 0);
+    }
+
+    ZooKeeper getZooKeeper() {
+        return zooKeeper;
+    }
+
+    /**
+     * 引用一个锁名称的子节点快照，加锁流程结束后必须调用 {@link #unrefChildrenCache(String, ZkChildrenCache)}
+     */
+    ZkChildrenCache refChildrenCache(String lockName) {
+        return childrenCaches.compute(lockName, (name, cache) -> {
+            if (cache == null) {
+                cache = new ZkChildrenCache();
+            }
+            cache.refs++;
+            return cache;
+        });
+    }
+
+    /**
+     * 释放一次引用，最后一个引用释放后移除快照，与 ref 在同一个 compute 中判断，不会移除刚被引用的快照
+     */
+    void unrefChildrenCache(String lockName, ZkChildrenCache cache) {
+        childrenCaches.computeIfPresent(lockName, (name, current) -> {
+            if (current != cache || --current.refs > 0) {
+                return current;
+            }
+            return null;
+        });
+    }
+
+    ScheduledExecutorService getRetryExecutor() {
+        return retryExecutor;
     }
 }
@@ -1,144 +1,187 @@
 package com.yanjiazheng.dslock.util;
 
 
-import com.baomidou.mybatisplus.core.toolkit.CollectionUtils;
-import org.apache.commons.lang3.StringUtils;
-import org.apache.zookeeper.CreateMode;
-import org.apache.zookeeper.KeeperException;
-import org.apache.zookeeper.ZooDefs;
-import org.apache.zookeeper.ZooKeeper;
-
-import java.util.List;
-import java.util.concurrent.CountDownLatch;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
 
 /**
+ * 每个锁名称一个容器父节点 {@code /distributed/<锁名>}（没有子节点后由服务端清理），等待者在其下创建临时顺序节点，
+ * 只监听紧挨在自己前面的节点，查找前驱节点使用本节点共享的子节点快照，开销与其他锁名称无关
+ * <p>
+ * 加锁流程由 {@link ZkAsyncLock} 的异步回调完成，本类只是在调用线程上等待结果：
+ * 节点在第一次加锁时才创建，等待期间除调用线程外不占用其他线程，支持带截止时间的 tryLock，
+ * 超时、中断或连接断开后放弃时由异步流程删除已创建的节点。
+ *
  * @author hp
  */
-public class ZkDistributedLock {
+public class ZkDistributedLock implements Lock {
 
-    private static final String ROOT_PATH = "/distributed";
-    private static final ThreadLocal<Integer> THREAD_LOCAL = new ThreadLocal<>();
+    static final String ROOT_PATH = "/distributed";
 
-    private String path;
+    static final String NODE_PREFIX = "lock-";
 
-    private ZooKeeper zooKeeper;
+    /**
+     * 当前线程持有的zk锁：锁名称 -> 锁句柄和重入次数，多个锁名称互不影响
+     */
+    private static final ThreadLocal<Map<String, Hold>> THREAD_LOCAL = ThreadLocal.withInitial(HashMap::new);
 
-    public ZkDistributedLock(ZooKeeper zooKeeper, String lockName) {
-        try {
-            this.zooKeeper = zooKeeper;
-            if (THREAD_LOCAL.get() == null || THREAD_LOCAL.get() == 0) {
-                this.path = zooKeeper.create(ROOT_PATH + "/" + lockName + "-", null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+    private final ZkClient client;
+
+    private final String lockName;
+
+    public ZkDistributedLock(ZkClient client, String lockName) {
+        this.client = client;
+        this.lockName = lockName;
+    }
+
+    /**
+     * 获取分布式锁，阻塞直到获取成功，等待期间的中断会在获取锁之后恢复
+     * 使用ThreadLocal按锁名称记录当前线程的锁深度，以支持递归调用
+     */
+    @Override
+    public void lock() {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                this.lockInterruptibly();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
             }
-        } catch (KeeperException | InterruptedException e) {
-            e.printStackTrace();
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
     }
 
+    @Override
+    public void lockInterruptibly() throws InterruptedException {
+        this.tryLock(-1L, TimeUnit.MILLISECONDS);
+    }
+
     /**
-     * 获取分布式锁
-     * 该方法通过在ZooKeeper中创建节点并监听前一个节点的状态来实现分布式锁的功能
-     * 使用ThreadLocal来记录当前线程的锁深度，以支持递归调用
+     * 只尝试一次：存在前一个节点时立即放弃，不等待
      */
-    public void lock() {
-        // 检查当前线程是否已经持有锁，如果是，则增加锁的计数
-        Integer flag = THREAD_LOCAL.get();
-        if (flag != null && flag > 0) {
-            THREAD_LOCAL.set(flag + 1);
-            return;
+    @Override
+    public boolean tryLock() {
+        if (this.reenter()) {
+            return true;
         }
         try {
-            // 获取当前节点的前一个节点路径
-            String preNode = getPreNode(path);
-            // 如果该节点没有前一个节点，说明该节点时最小节点，放行执行业务逻辑
-            if (StringUtils.isEmpty(preNode)) {
-                THREAD_LOCAL.set(1);
-                return;
-            } else {
-                // 创建一个计数器，用于阻塞当前线程直到前一个节点被删除
-                CountDownLatch countDownLatch = new CountDownLatch(1);
-                // 检查前一个节点是否存在，如果不存在，则放行执行业务逻辑
-                if (this.zooKeeper.exists(ROOT_PATH + "/" + preNode, event -> countDownLatch.countDown()) == null) {
-                    THREAD_LOCAL.set(1);
-                    return;
-                }
-                // 阻塞当前线程，直到前一个节点被删除
-                countDownLatch.await();
-                THREAD_LOCAL.set(1);
-                return;
-            }
-        } catch (Exception e) {
-            // 异常处理：打印异常信息，并在200毫秒后重试获取锁
-            e.printStackTrace();
-            try {
-                Thread.sleep(200);
-            } catch (InterruptedException ex) {
-                ex.printStackTrace();
+            return this.await(new ZkAsyncLock(client, lockName, false).acquire(), -1L, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * 在截止时间之前获取锁
+     *
+     * @param time 等待锁的时间，如果为-1，则一直等待
+     */
+    @Override
+    public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+        if (this.reenter()) {
+            return true;
+        }
+        return this.await(new ZkAsyncLock(client, lockName, true).acquire(), time, unit);
+    }
+
+    /**
+     * 在调用线程上等待异步加锁结果，超时或中断时取消加锁流程
+     */
+    private boolean await(CompletableFuture<LockHandle> future, long time, TimeUnit unit) throws InterruptedException {
+        LockHandle handle;
+        try {
+            handle = time < 0 ? future.get() : future.get(time, unit);
+        } catch (TimeoutException e) {
+            handle = this.cancel(future);
+        } catch (InterruptedException e) {
+            handle = this.cancel(future);
+            if (handle == null) {
+                throw e;
             }
-            lock();
+            // 中断之前已经获取成功，保留中断标记
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("failed to acquire zookeeper lock: " + lockName, e.getCause());
+        }
+        if (handle == null) {
+            return false;
         }
+        THREAD_LOCAL.get().put(lockName, new Hold(handle));
+        return true;
+    }
+
+    /**
+     * 取消加锁流程，如果取消之前已经获取成功，返回获取到的锁
+     */
+    private LockHandle cancel(CompletableFuture<LockHandle> future) {
+        if (future.completeExceptionally(new TimeoutException("lock wait cancelled: " + lockName))) {
+            return null;
+        }
+        return future.getNow(null);
+    }
+
+    private boolean reenter() {
+        Hold hold = THREAD_LOCAL.get().get(lockName);
+        if (hold != null) {
+            hold.count++;
+            return true;
+        }
+        return false;
     }
 
     /**
      * 解锁方法，用于释放锁
      * <p>
-     * 此方法通过减少线程本地变量中的计数来实现解锁逻辑当计数降至0时，表明该线程不再持有锁，此时会尝试移除ZooKeeper中的对应节点以释放锁
-     * 如果移除节点操作成功，也将从线程本地变量中移除相关数据
-     * <p>
-     * 注意：此方法忽略了异常处理，仅打印异常堆栈信息在实际应用中，可能需要更详细的异常处理逻辑
+     * 此方法通过减少线程本地变量中的计数来实现解锁逻辑当计数降至0时，表明该线程不再持有锁，此时删除ZooKeeper中的对应节点以释放锁
+     * 并从线程本地变量中移除相关数据
+     *
+     * @throws IllegalMonitorStateException 当前线程没有持有该锁时抛出此异常
      */
+    @Override
     public void unlock() {
-        try {
-            // 减少线程本地变量中的计数值，表示释放一个锁
-            THREAD_LOCAL.set(THREAD_LOCAL.get() - 1);
-            // 当计数值为0时，表明该线程不再持有锁，尝试删除ZooKeeper中的节点以释放锁
-            if (THREAD_LOCAL.get() == 0) {
-                this.zooKeeper.delete(path, 0);
-                // 从线程本地变量中移除相关数据，避免内存泄漏
+        Map<String, Hold> holds = THREAD_LOCAL.get();
+        Hold hold = holds.get(lockName);
+        if (hold == null) {
+            throw new IllegalMonitorStateException("this lock doesn't belong to you!");
+        }
+        // 减少重入计数，当计数值为0时，表明该线程不再持有锁，删除ZooKeeper中的节点以释放锁
+        if (--hold.count == 0) {
+            // 从线程本地变量中移除相关数据，避免内存泄漏
+            holds.remove(lockName);
+            if (holds.isEmpty()) {
                 THREAD_LOCAL.remove();
             }
-        } catch (InterruptedException | KeeperException e) {
-            // 打印异常信息，实际应用中可能需要更详细的异常处理逻辑
-            e.printStackTrace();
+            hold.handle.unlock();
         }
     }
 
+    @Override
+    public Condition newCondition() {
+        return null;
+    }
 
     /**
-     * 获取指定节点的前节点
-     *
-     * @param path 后端节点的路径
-     * @return 返回前一个节点的路径，如果不存在则返回null
+     * 线程持有的锁句柄和重入次数
      */
-    private String getPreNode(String path) {
+    private static class Hold {
 
-        try {
-            // 获取当前节点的序列化号
-            long curSerial = Long.parseLong(StringUtils.substringAfterLast(path, "-"));
-            // 获取根路径下的所有序列化子节点
-            List<String> nodes = this.zooKeeper.getChildren(ROOT_PATH, false);
-
-            // 判空
-            if (CollectionUtils.isEmpty(nodes)) {
-                return null;
-            }
+        private final LockHandle handle;
 
-            // 获取前一个节点
-            long flag = 0L;
-            String preNode = null;
-            for (String node : nodes) {
-                // 获取每个节点的序列化号
-                long serial = Long.parseLong(StringUtils.substringAfterLast(node, "-"));
-                if (serial < curSerial && serial > flag) {
-                    flag = serial;
-                    preNode = node;
-                }
-            }
+        private int count = 1;
 
-            return preNode;
-        } catch (KeeperException | InterruptedException e) {
-            e.printStackTrace();
+        Hold(LockHandle handle) {
+            this.handle = handle;
         }
-        return null;
     }
 
 }
@@ -0,0 +1,286 @@
+package com.yanjiazheng.dslock.util;
+
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.KeeperException;
+import org.apache.zookeeper.ZooDefs;
+import org.apache.zookeeper.ZooKeeper;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+
+/**
+ * 基于 zookeeper 的可重入读写锁
+ * <p>
+ * 每把锁一个容器父节点 {@code /distributed-rw/<锁名>}（最后一个子节点删除后由服务端清理），读者创建 read-序号、写者创建 write-序号 临时顺序节点：
+ * 读者只需要等待序号比自己小的最近一个写节点，写者需要等待序号比自己小的最近一个节点（读或写），
+ * 因此连续的读者互不阻塞。持有写锁的线程可以再获取读锁（降级），持有读锁时获取写锁直接抛出异常（不支持升级）。
+ * 重入次数按 锁名+模式 记录在线程上。
+ * <p>
+ * 查找前驱节点使用本节点上同一把锁共享的子节点快照（{@link ZkChildrenCache}），快照中包含自己时不需要 getChildren，
+ * 快照只在加锁期间引用；
+ * 支持带截止时间的 tryLock，超时或中断后删除自己的节点。zookeeper 异常时删除节点后循环重试，
+ * 最多重试 {@link #MAX_RETRIES} 次且不超过截止时间。
+ *
+ * @author hp
+ */
+public class ZkReadWriteLock implements ReadWriteLock {
+
+    static final String ROOT_PATH = "/distributed-rw";
+
+    private static final String READ_PREFIX = "read-";
+
+    private static final String WRITE_PREFIX = "write-";
+
+    /**
+     * zookeeper 异常后的重试间隔（毫秒）和次数
+     */
+    private static final long RETRY_DELAY = 200;
+
+    private static final int MAX_RETRIES = 25;
+
+    /**
+     * 当前线程持有的读写锁：锁路径+模式 -> 节点和重入次数
+     */
+    private static final ThreadLocal<Map<String, Hold>> HOLDS = ThreadLocal.withInitial(HashMap::new);
+
+    private final ZkClient client;
+
+    private final ZooKeeper zooKeeper;
+
+    private final String lockPath;
+
+    private final Lock readLock = new Mode(READ_PREFIX);
+
+    private final Lock writeLock = new Mode(WRITE_PREFIX);
+
+    public ZkReadWriteLock(ZkClient client, String lockName) {
+        this.client = client;
+        this.zooKeeper = client.getZooKeeper();
+        this.lockPath = ROOT_PATH + "/" + lockName;
+    }
+
+    @Override
+    public Lock readLock() {
+        return readLock;
+    }
+
+    @Override
+    public Lock writeLock() {
+        return writeLock;
+    }
+
+    private class Mode implements Lock {
+
+        private final String prefix;
+
+        Mode(String prefix) {
+            this.prefix = prefix;
+        }
+
+        private String holdKey(String prefix) {
+            return lockPath + "/" + prefix;
+        }
+
+        @Override
+        public void lock() {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    this.lockInterruptibly();
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public void lockInterruptibly() throws InterruptedException {
+            this.tryLock(-1L, TimeUnit.MILLISECONDS);
+        }
+
+        /**
+         * 只尝试一次：存在需要等待的前驱节点时立即放弃
+         */
+        @Override
+        public boolean tryLock() {
+            try {
+                return this.tryLock(0L, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+
+        /**
+         * 在截止时间之前获取锁
+         *
+         * @param time 等待锁的时间，如果为-1，则一直等待
+         */
+        @Override
+        public boolean tryLock(long time, TimeUnit unit) throws InterruptedException {
+            Map<String, Hold> holds = HOLDS.get();
+            Hold hold = holds.get(holdKey(prefix));
+            // 重入
+            if (hold != null) {
+                hold.count++;
+                return true;
+            }
+            if (prefix.equals(WRITE_PREFIX) && holds.get(holdKey(READ_PREFIX)) != null) {
+                throw new IllegalMonitorStateException("read lock cannot be upgraded to write lock: " + lockPath);
+            }
+            Hold writeHold = holds.get(holdKey(WRITE_PREFIX));
+            // 降级时忽略自己持有的写节点
+            String exclude = writeHold == null ? null : writeHold.node;
+            long deadline = time < 0 ? Long.MAX_VALUE : System.nanoTime() + unit.toNanos(time);
+            ZkChildrenCache children = client.refChildrenCache(lockPath);
+            try {
+                for (int retries = 0; ; retries++) {
+                    String path = null;
+                    try {
+                        path = createNode(0);
+                        if (this.await(path.substring(path.lastIndexOf('/') + 1), exclude, deadline, children)) {
+                            holds.put(holdKey(prefix), new Hold(path));
+                            return true;
+                        }
+                        deleteQuietly(path);
+                        return false;
+                    } catch (KeeperException e) {
+                        deleteQuietly(path);
+                        if (retries >= MAX_RETRIES || deadline - System.nanoTime() < TimeUnit.MILLISECONDS.toNanos(RETRY_DELAY)) {
+                            throw new IllegalStateException("failed to acquire zookeeper lock: " + lockPath, e);
+                        }
+                        Thread.sleep(RETRY_DELAY);
+                    } catch (InterruptedException e) {
+                        deleteQuietly(path);
+                        throw e;
+                    }
+                }
+            } finally {
+                client.unrefChildrenCache(lockPath, children);
+            }
+        }
+
+        /**
+         * 等待前驱节点全部删除
+         *
+         * @return 截止时间之前获得锁返回true
+         */
+        private boolean await(String self, String exclude, long deadline, ZkChildrenCache children) throws KeeperException, InterruptedException {
+            while (true) {
+                String blocker = getBlocker(self, exclude, children);
+                if (blocker == null) {
+                    return true;
+                }
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    return false;
+                }
+                CountDownLatch countDownLatch = new CountDownLatch(1);
+                if (zooKeeper.exists(lockPath + "/" + blocker, event -> countDownLatch.countDown()) == null) {
+                    // 前驱节点已经删除，从快照中移除后继续向前查找
+                    children.remove(blocker);
+                    continue;
+                }
+                if (!countDownLatch.await(remaining, TimeUnit.NANOSECONDS)) {
+                    return false;
+                }
+            }
+        }
+
+        private String createNode(int retries) throws KeeperException, InterruptedException {
+            try {
+                return zooKeeper.create(lockPath + "/" + prefix, null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.EPHEMERAL_SEQUENTIAL);
+            } catch (KeeperException.NoNodeException e) {
+                if (retries >= MAX_RETRIES) {
+                    throw e;
+                }
+                // 第一次使用该锁名称，或容器父节点刚被清理，创建父节点
+                try {
+                    zooKeeper.create(lockPath, null, ZooDefs.Ids.OPEN_ACL_UNSAFE, CreateMode.CONTAINER);
+                } catch (KeeperException.NodeExistsException ignored) {
+                    // 其他客户端已经创建
+                }
+                return createNode(retries + 1);
+            }
+        }
+
+        /**
+         * 读者等待序号比自己小的最近一个写节点，写者等待序号比自己小的最近一个节点
+         * 共享快照中包含自己时直接在快照中查找，否则先拉取子节点
+         *
+         * @param self    自己的节点名
+         * @param exclude 不参与比较的节点（当前线程持有的写节点）
+         */
+        private String getBlocker(String self, String exclude, ZkChildrenCache children) throws KeeperException, InterruptedException {
+            if (!children.contains(self)) {
+                children.update(zooKeeper.getChildren(lockPath, false));
+                if (!children.contains(self)) {
+                    // 会话过期，临时节点已被删除
+                    throw new KeeperException.NoNodeException(lockPath + "/" + self);
+                }
+            }
+            return children.lower(self, node -> !node.equals(exclude)
+                    && (prefix.equals(WRITE_PREFIX) || node.startsWith(WRITE_PREFIX)));
+        }
+
+        @Override
+        public void unlock() {
+            Map<String, Hold> holds = HOLDS.get();
+            Hold hold = holds.get(holdKey(prefix));
+            if (hold == null) {
+                throw new IllegalMonitorStateException("this lock doesn't belong to you!");
+            }
+            if (--hold.count > 0) {
+                return;
+            }
+            holds.remove(holdKey(prefix));
+            if (holds.isEmpty()) {
+                HOLDS.remove();
+            }
+            try {
+                zooKeeper.delete(lockPath + "/" + hold.node, -1);
+            } catch (InterruptedException | KeeperException e) {
+                e.printStackTrace();
+            }
+        }
+
+        @Override
+        public Condition newCondition() {
+            return null;
+        }
+
+        private void deleteQuietly(String path) {
+            if (path == null) {
+                return;
+            }
+            try {
+                zooKeeper.delete(path, -1);
+            } catch (InterruptedException | KeeperException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     * 线程持有的节点名和重入次数
+     */
+    private static class Hold {
+
+        private final String node;
+
+        private int count = 1;
+
+        Hold(String path) {
+            this.node = path.substring(path.lastIndexOf('/') + 1);
+        }
+    }
+}
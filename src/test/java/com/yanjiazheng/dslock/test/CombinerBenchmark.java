@@ -0,0 +1,70 @@
+package com.yanjiazheng.dslock.test;
+
+import com.yanjiazheng.dslock.util.FlatCombiner;
+import org.redisson.Redisson;
+import org.redisson.api.RAtomicLong;
+import org.redisson.api.RLock;
+import org.redisson.api.RedissonClient;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 对比每个线程各自获取 redisson 锁（原 checkAndLockByRedisson 的做法）与合并临界区后的吞吐量
+ * 临界区内用一次读和一次写 redis 模拟查询和扣减库存，不包含数据库操作；
+ * 与 StockService 注释中的 320.7/sec 基线对比时需要用压测工具测整个接口
+ * 需要本地 127.0.0.1:6379 的 Redis
+ */
+public class CombinerBenchmark {
+
+    private static final int THREADS = 200;
+
+    private static final int ROUNDS = 50;
+
+    public static void main(String[] args) throws Exception {
+        RedissonClient client = Redisson.create();
+        RAtomicLong stock = client.getAtomicLong("bench:combiner:stock");
+        FlatCombiner combiner = new FlatCombiner(client::getLock, 64);
+        try {
+            stock.set(Long.MAX_VALUE);
+            run("lock per thread", () -> {
+                RLock lock = client.getLock("bench:combiner:lock");
+                lock.lock();
+                try {
+                    stock.set(stock.get() - 1);
+                } finally {
+                    lock.unlock();
+                }
+            });
+            run("combined       ", () -> combiner.execute("bench:combiner:lock", () -> {
+                stock.set(stock.get() - 1);
+                return null;
+            }));
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    private static void run(String name, Runnable task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < ROUNDS; j++) {
+                        task.run();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        System.out.printf("%s: %.1f ops/s%n", name, THREADS * ROUNDS * 1e9 / elapsed);
+    }
+}
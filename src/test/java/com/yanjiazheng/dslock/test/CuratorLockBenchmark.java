@@ -0,0 +1,75 @@
+package com.yanjiazheng.dslock.test;
+
+import com.yanjiazheng.dslock.config.CuratorLockRegistry;
+import com.yanjiazheng.dslock.util.LockHandle;
+import org.apache.curator.framework.CuratorFramework;
+import org.apache.curator.framework.CuratorFrameworkFactory;
+import org.apache.curator.framework.recipes.locks.InterProcessMutex;
+import org.apache.curator.retry.ExponentialBackoffRetry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * 对比每次加锁新建 InterProcessMutex（原 checkAndLockByCurator 的做法）与复用注册表中缓存实例的吞吐量
+ * 只测量加锁和解锁本身，不包含库存的数据库操作；与 StockService 注释中的 224.5/sec 基线对比时需要用压测工具测整个接口
+ * 需要本地 127.0.0.1:2181 的 zookeeper
+ */
+public class CuratorLockBenchmark {
+
+    private static final int THREADS = 32;
+
+    private static final int ROUNDS = 200;
+
+    public static void main(String[] args) throws Exception {
+        CuratorFramework client = CuratorFrameworkFactory.newClient("127.0.0.1:2181", new ExponentialBackoffRetry(1000, 3));
+        client.start();
+        CuratorLockRegistry registry = new CuratorLockRegistry();
+        ReflectionTestUtils.setField(registry, "curatorFramework", client);
+        registry.init();
+        try {
+            run("new mutex per lock", () -> {
+                InterProcessMutex mutex = new InterProcessMutex(client, "/curator/bench");
+                mutex.acquire();
+                mutex.release();
+            });
+            run("cached mutex      ", () -> {
+                try (LockHandle ignored = registry.lock("/curator/bench")) {
+                    // 只测量加锁和解锁
+                }
+            });
+        } finally {
+            registry.destroy();
+            client.close();
+        }
+    }
+
+    private interface Task {
+
+        void run() throws Exception;
+    }
+
+    private static void run(String name, Task task) throws InterruptedException {
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    for (int j = 0; j < ROUNDS; j++) {
+                        task.run();
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        System.out.printf("%s: %.1f ops/s%n", name, THREADS * ROUNDS * 1e9 / elapsed);
+    }
+}
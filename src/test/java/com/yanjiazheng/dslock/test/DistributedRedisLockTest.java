@@ -0,0 +1,132 @@
+package com.yanjiazheng.dslock.test;
+
+import com.yanjiazheng.dslock.util.DistributedLockClient;
+import com.yanjiazheng.dslock.util.DistributedRedisLock;
+import com.yanjiazheng.dslock.util.LockPubSub;
+import com.yanjiazheng.dslock.util.RedisScriptRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 验证 Redis 锁的重入只在本地计数：只有第一次加锁和最后一次解锁访问 Redis，租期结束后的重入重新访问 Redis
+ */
+public class DistributedRedisLockTest {
+
+    /**
+     * 记录每次脚本调用的脚本和持有者参数
+     */
+    private final List<Object[]> calls = new CopyOnWriteArrayList<>();
+
+    private DistributedLockClient client;
+
+    @BeforeEach
+    public void setUp() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class, invocation -> {
+            if ("execute".equals(invocation.getMethod().getName()) && invocation.getArgument(0) instanceof RedisScript) {
+                RedisScript<?> script = invocation.getArgument(0);
+                calls.add(new Object[]{script, invocation.getArgument(2)});
+                // 加锁成功返回nil，解锁删除锁返回1
+                return script == DistributedRedisLock.UNLOCK_SCRIPT ? 1L : null;
+            }
+            return null;
+        });
+        client = new DistributedLockClient();
+        ReflectionTestUtils.setField(client, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(client, "pubSub", mock(LockPubSub.class));
+        ReflectionTestUtils.setField(client, "scriptRegistry", mock(RedisScriptRegistry.class));
+        client.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.destroy();
+    }
+
+    @Test
+    public void nestedAcquisitionsDoNotTouchRedis() {
+        DistributedRedisLock lock = client.getRedisLock("lock");
+        lock.lock();
+        assertEquals(1, calls.size());
+
+        lock.lock();
+        lock.lock();
+        // 另一个锁对象，同一线程同一锁名称，同样是重入
+        client.getRedisLock("lock").lock();
+        assertEquals(1, calls.size());
+
+        lock.unlock();
+        lock.unlock();
+        lock.unlock();
+        assertEquals(1, calls.size());
+
+        lock.unlock();
+        assertEquals(2, calls.size());
+        assertEquals(DistributedRedisLock.UNLOCK_SCRIPT, calls.get(1)[0]);
+    }
+
+    @Test
+    public void ownerIsTheLockingThread() throws InterruptedException {
+        // 在当前线程创建，在另一个线程加锁
+        DistributedRedisLock lock = client.getRedisLock("lock");
+        AtomicReference<Long> lockingThread = new AtomicReference<>();
+        Thread thread = new Thread(() -> {
+            lockingThread.set(Thread.currentThread().getId());
+            lock.lock();
+        });
+        thread.start();
+        thread.join();
+
+        assertEquals(1, calls.size());
+        assertTrue(String.valueOf(calls.get(0)[1]).endsWith(":" + lockingThread.get()));
+
+        // 当前线程不是持有者，解锁直接失败，不访问 Redis
+        assertThrows(IllegalMonitorStateException.class, lock::unlock);
+        assertEquals(1, calls.size());
+    }
+
+    @Test
+    public void reenterAfterLeaseExpiryDoesNotSucceedLocally() throws InterruptedException {
+        DistributedRedisLock lock = client.getRedisLock("lock");
+        assertTrue(lock.tryLock(0, 50, TimeUnit.MILLISECONDS));
+        assertEquals(1, calls.size());
+
+        // 租期内的重入只在本地计数
+        assertTrue(lock.tryLock(0, 50, TimeUnit.MILLISECONDS));
+        assertEquals(1, calls.size());
+
+        Thread.sleep(100);
+        // 租期已经结束，Redis 中的锁可能已被其他节点获取，重入必须重新执行加锁脚本
+        calls.clear();
+        assertTrue(lock.tryLock(0, 50, TimeUnit.MILLISECONDS));
+        assertEquals(1, calls.size());
+        assertEquals(DistributedRedisLock.LEASE_LOCK_SCRIPT, calls.get(0)[0]);
+    }
+
+    @Test
+    public void reenterAfterLeaseExpiryFailsWhenTakenByAnotherNode() throws InterruptedException {
+        DistributedRedisLock lock = client.getRedisLock("lock");
+        assertTrue(lock.tryLock(0, 50, TimeUnit.MILLISECONDS));
+        Thread.sleep(100);
+
+        // 其他节点在租期结束后获取了锁：加锁脚本返回锁的剩余过期时间
+        ReflectionTestUtils.setField(lock, "redisTemplate", mock(StringRedisTemplate.class, invocation ->
+                "execute".equals(invocation.getMethod().getName()) ? 30000L : null));
+        assertFalse(lock.tryLock(0, 50, TimeUnit.MILLISECONDS));
+        assertThrows(IllegalMonitorStateException.class, lock::unlock);
+    }
+}
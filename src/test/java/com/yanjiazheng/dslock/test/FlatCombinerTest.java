@@ -0,0 +1,59 @@
+package com.yanjiazheng.dslock.test;
+
+import com.yanjiazheng.dslock.util.FlatCombiner;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * 验证合并执行不丢操作，且所有线程结束后不再保留 key 对应的 slot
+ */
+public class FlatCombinerTest {
+
+    private static final int THREADS = 16;
+
+    private static final int ROUNDS = 200;
+
+    private static final int KEYS = 8;
+
+    @Test
+    public void slotsAreRemovedWhenIdle() throws InterruptedException {
+        Map<String, Lock> locks = new ConcurrentHashMap<>();
+        FlatCombiner combiner = new FlatCombiner(key -> locks.computeIfAbsent(key, k -> new ReentrantLock()), 4);
+        int[] counters = new int[KEYS];
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            new Thread(() -> {
+                try {
+                    for (int j = 0; j < ROUNDS; j++) {
+                        int index = j % KEYS;
+                        // 计数只在锁内修改，合并执行时不会丢失更新
+                        combiner.execute("stock:" + index, () -> counters[index]++);
+                    }
+                } catch (RuntimeException e) {
+                    failures.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        assertTrue(done.await(30, TimeUnit.SECONDS));
+        assertEquals(0, failures.get());
+        for (int counter : counters) {
+            assertEquals(THREADS * ROUNDS / KEYS, counter);
+        }
+        Map<?, ?> slots = (Map<?, ?>) ReflectionTestUtils.getField(combiner, "slots");
+        assertTrue(slots.isEmpty(), "slots: " + slots.keySet());
+    }
+}
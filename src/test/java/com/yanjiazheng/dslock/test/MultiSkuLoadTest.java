@@ -0,0 +1,73 @@
+package com.yanjiazheng.dslock.test;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 压测不同数量的商品（SKU）同时扣减时 /check/lock 接口的吞吐量
+ * 并发线程数和请求总数固定，请求按轮询分散到前 k 个商品上，k 依次取 1、2、4、8……
+ * 每个商品使用独立的锁，吞吐量应随 k 近似线性增长，直到数据库或 redis 本身成为瓶颈
+ * 需要先启动应用，并在 db_stock 中准备好参数中的商品且库存足够
+ * 用法：MultiSkuLoadTest [baseUrl] [商品编码...]，默认 http://localhost:8000 和 sku-1 ~ sku-8
+ */
+public class MultiSkuLoadTest {
+
+    private static final int THREADS = 64;
+
+    private static final int REQUESTS = 5000;
+
+    public static void main(String[] args) throws Exception {
+        String baseUrl = args.length > 0 ? args[0] : "http://localhost:8000";
+        String[] skus = args.length > 1 ? Arrays.copyOfRange(args, 1, args.length)
+                : new String[]{"sku-1", "sku-2", "sku-3", "sku-4", "sku-5", "sku-6", "sku-7", "sku-8"};
+        HttpClient client = HttpClient.newHttpClient();
+
+        double base = 0;
+        for (int k = 1; k <= skus.length; k *= 2) {
+            double throughput = run(client, baseUrl, Arrays.copyOf(skus, k));
+            if (k == 1) {
+                base = throughput;
+            }
+            System.out.printf("%d sku: %.1f req/s (x%.2f)%n", k, throughput, throughput / base);
+        }
+    }
+
+    private static double run(HttpClient client, String baseUrl, String[] skus) throws InterruptedException {
+        AtomicInteger next = new AtomicInteger();
+        AtomicInteger failed = new AtomicInteger();
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            new Thread(() -> {
+                try {
+                    start.await();
+                    int n;
+                    while ((n = next.getAndIncrement()) < REQUESTS) {
+                        HttpRequest request = HttpRequest.newBuilder(
+                                URI.create(baseUrl + "/check/lock?productCode=" + skus[n % skus.length])).GET().build();
+                        if (client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode() != 200) {
+                            failed.incrementAndGet();
+                        }
+                    }
+                } catch (Exception e) {
+                    e.printStackTrace();
+                } finally {
+                    done.countDown();
+                }
+            }).start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - begin;
+        if (failed.get() > 0) {
+            System.out.println("失败请求：" + failed.get());
+        }
+        return REQUESTS * 1e9 / elapsed;
+    }
+}
@@ -0,0 +1,77 @@
+package com.yanjiazheng.dslock.test;
+
+import com.yanjiazheng.dslock.util.DistributedLockClient;
+import com.yanjiazheng.dslock.util.LockHandle;
+import com.yanjiazheng.dslock.util.LockPubSub;
+import com.yanjiazheng.dslock.util.LockWatchdog;
+import com.yanjiazheng.dslock.util.RedisScriptRegistry;
+import com.yanjiazheng.dslock.util.RedisSemaphore;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.redis.core.StringRedisTemplate;
+import org.springframework.data.redis.core.script.RedisScript;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+
+/**
+ * 验证信号量许可在持有期间由看门狗续期，释放后停止续期
+ */
+public class RedisSemaphoreTest {
+
+    private final AtomicInteger renewals = new AtomicInteger();
+
+    private DistributedLockClient client;
+
+    @BeforeEach
+    public void setUp() {
+        StringRedisTemplate redisTemplate = mock(StringRedisTemplate.class, invocation -> {
+            if ("execute".equals(invocation.getMethod().getName()) && invocation.getArgument(0) instanceof RedisScript) {
+                RedisScript<?> script = invocation.getArgument(0);
+                if (script == LockWatchdog.RENEW_PERMITS_SCRIPT) {
+                    renewals.incrementAndGet();
+                    // 没有续期失败的许可
+                    return Collections.emptyList();
+                }
+                // 获取许可成功返回nil，释放许可返回释放的数量
+                return script == RedisSemaphore.RELEASE_SCRIPT ? 1L : null;
+            }
+            return null;
+        });
+        client = new DistributedLockClient();
+        ReflectionTestUtils.setField(client, "redisTemplate", redisTemplate);
+        ReflectionTestUtils.setField(client, "pubSub", mock(LockPubSub.class));
+        ReflectionTestUtils.setField(client, "scriptRegistry", mock(RedisScriptRegistry.class));
+        client.init();
+    }
+
+    @AfterEach
+    public void tearDown() {
+        client.destroy();
+    }
+
+    @Test
+    public void heldPermitsAreRenewedUntilReleased() throws InterruptedException {
+        RedisSemaphore semaphore = client.getSemaphore("downstream", 1, 300, TimeUnit.MILLISECONDS);
+        LockHandle permit = semaphore.tryAcquire(1, 0, TimeUnit.MILLISECONDS);
+        assertNotNull(permit);
+
+        // 调用时间超过租期，许可每 1/3 租期续期一次
+        Thread.sleep(700);
+        assertTrue(renewals.get() >= 2, "renewals: " + renewals.get());
+
+        permit.unlock();
+        Thread.sleep(300);
+        int afterRelease = renewals.get();
+        Thread.sleep(500);
+        assertEquals(afterRelease, renewals.get());
+    }
+}
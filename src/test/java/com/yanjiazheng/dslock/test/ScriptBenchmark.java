@@ -0,0 +1,78 @@
+package com.yanjiazheng.dslock.test;
+
+import com.yanjiazheng.dslock.util.DistributedRedisLock;
+import io.lettuce.core.RedisClient;
+import io.lettuce.core.ScriptOutputType;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.sync.RedisCommands;
+import org.springframework.data.redis.core.script.DefaultRedisScript;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 对比发送完整脚本（EVAL）与预加载后发送 EVALSHA 的单次请求字节数和平均耗时，
+ * 以及旧实现每次调用新建 DefaultRedisScript 带来的 SHA1 计算开销
+ * 需要本地 127.0.0.1:6379 的 Redis
+ */
+public class ScriptBenchmark {
+
+    private static final int ROUNDS = 10000;
+
+    public static void main(String[] args) {
+        RedisClient client = RedisClient.create("redis://127.0.0.1:6379");
+        try (StatefulRedisConnection<String, String> connection = client.connect()) {
+            RedisCommands<String, String> commands = connection.sync();
+            String script = DistributedRedisLock.LOCK_SCRIPT.getScriptAsString();
+            String[] keys = {"bench:lock"};
+            String owner = "bench-owner:1";
+            String expire = "30";
+
+            // 预热
+            for (int i = 0; i < 1000; i++) {
+                commands.eval(script, ScriptOutputType.INTEGER, keys, owner, expire);
+            }
+
+            long start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                commands.eval(script, ScriptOutputType.INTEGER, keys, owner, expire);
+            }
+            long evalNanos = System.nanoTime() - start;
+
+            String sha = commands.scriptLoad(script);
+            start = System.nanoTime();
+            for (int i = 0; i < ROUNDS; i++) {
+                commands.evalsha(sha, ScriptOutputType.INTEGER, keys, owner, expire);
+            }
+            long evalShaNanos = System.nanoTime() - start;
+            commands.del(keys);
+
+            // 旧实现每次调用都新建脚本对象并重新计算 SHA1
+            start = System.nanoTime();
+            int sink = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                sink += new DefaultRedisScript<>(script, Long.class).getSha1().length();
+            }
+            long shaNanos = System.nanoTime() - start;
+
+            System.out.printf("EVAL    : %d bytes/call, %.1f us/call%n",
+                    commandBytes("EVAL", script, "1", keys[0], owner, expire), evalNanos / 1000.0 / ROUNDS);
+            System.out.printf("EVALSHA : %d bytes/call, %.1f us/call%n",
+                    commandBytes("EVALSHA", sha, "1", keys[0], owner, expire), evalShaNanos / 1000.0 / ROUNDS);
+            System.out.printf("new DefaultRedisScript + SHA1 : %.2f us/call (%d)%n", shaNanos / 1000.0 / ROUNDS, sink);
+        } finally {
+            client.shutdown();
+        }
+    }
+
+    /**
+     * 按 RESP 协议计算一条命令发送的字节数
+     */
+    private static int commandBytes(String... parts) {
+        int bytes = ("*" + parts.length + "\r\n").length();
+        for (String part : parts) {
+            int length = part.getBytes(StandardCharsets.UTF_8).length;
+            bytes += ("$" + length + "\r\n").length() + length + 2;
+        }
+        return bytes;
+    }
+}